@@ -8,12 +8,13 @@ import java.io.IOException;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import com.google.common.collect.ImmutableMap;
-import net.sf.json.JSONArray;
-import net.sf.json.JSONObject;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.xcontent.DeprecationHandler;
+import org.elasticsearch.xcontent.NamedXContentRegistry;
+import org.elasticsearch.xcontent.XContentParser;
+import org.elasticsearch.xcontent.XContentType;
 import hudson.console.ConsoleNote;
 
 /**
@@ -26,13 +27,19 @@ class ConsoleNotes {
   private static final String ANNOTATIONS_KEY = "annotations";
   private static final String POSITION_KEY = "position";
   private static final String NOTE_KEY = "note";
+  private static final byte[] PREAMBLE = ConsoleNote.PREAMBLE_STR.getBytes(StandardCharsets.UTF_8);
+  private static final byte[] POSTAMBLE = ConsoleNote.POSTAMBLE_STR.getBytes(StandardCharsets.UTF_8);
 
   private ConsoleNotes() {
   }
 
-  static Map<String, Object> parse(byte[] b, int len) {
+  /**
+   * Writes the message of the line, without the end of line, and its console notes as fields of the event.
+   * The line is scanned at the byte level, and the message and the notes are copied to the event without
+   * decoding them to a String.
+   */
+  static void encode(byte[] b, int len, EventEncoder encoder) {
     assert len > 0 && len <= b.length;
-    Map<String, Object> data = new LinkedHashMap<>();
     int eol = len;
     while (eol > 0) {
       byte c = b[eol - 1];
@@ -42,58 +49,122 @@ class ConsoleNotes {
         break;
       }
     }
-    String line = new String(b, 0, eol, StandardCharsets.UTF_8);
-    // Would be more efficient to do searches at the byte[] level, but too much bother for now,
-    // especially since there is no standard library method to do offset searches like String has.
-    if (!line.contains(ConsoleNote.PREAMBLE_STR)) {
+    int preamble = indexOf(b, 0, eol, PREAMBLE);
+    if (preamble == -1) {
       // Shortcut for the common case that we have no notes.
-      data.put(MESSAGE_KEY, line);
-    } else {
-      StringBuilder buf = new StringBuilder();
-      List<Map<String, Object>> annotations = new ArrayList<>();
-      int pos = 0;
-      while (true) {
-        int preamble = line.indexOf(ConsoleNote.PREAMBLE_STR, pos);
-        if (preamble == -1) {
-          break;
-        }
-        int endOfPreamble = preamble + ConsoleNote.PREAMBLE_STR.length();
-        int postamble = line.indexOf(ConsoleNote.POSTAMBLE_STR, endOfPreamble);
-        if (postamble == -1) {
-          // Malformed; stop here.
-          break;
-        }
-        buf.append(line, pos, preamble);
-        annotations.add(
-          ImmutableMap.of(POSITION_KEY, buf.length(), NOTE_KEY, line.substring(endOfPreamble, postamble)));
-        pos = postamble + ConsoleNote.POSTAMBLE_STR.length();
+      encoder.field(MESSAGE_KEY, b, 0, eol);
+      return;
+    }
+    // start and end of every note, and its position in the message
+    int[] notes = new int[3 * 4];
+    int count = 0;
+    int position = 0;
+    int pos = 0;
+    encoder.beginString(MESSAGE_KEY);
+    while (preamble != -1) {
+      int endOfPreamble = preamble + PREAMBLE.length;
+      int postamble = indexOf(b, endOfPreamble, eol, POSTAMBLE);
+      if (postamble == -1) {
+        // Malformed; stop here.
+        break;
       }
-      buf.append(line, pos, line.length()); // append tail
-      data.put(MESSAGE_KEY, buf.toString());
-      data.put(ANNOTATIONS_KEY, annotations);
+      position += encoder.string(b, pos, preamble);
+      if (count == notes.length) {
+        notes = Arrays.copyOf(notes, notes.length * 2);
+      }
+      notes[count++] = endOfPreamble;
+      notes[count++] = postamble;
+      notes[count++] = position;
+      pos = postamble + POSTAMBLE.length;
+      preamble = indexOf(b, pos, eol, PREAMBLE);
+    }
+    encoder.string(b, pos, eol); // append tail
+    encoder.endString();
+    encoder.beginArray(ANNOTATIONS_KEY);
+    for (int i = 0; i < count; i += 3) {
+      encoder.beginObject()
+             .field(POSITION_KEY, notes[i + 2])
+             .field(NOTE_KEY, b, notes[i], notes[i + 1])
+             .endObject();
     }
-    return data;
+    encoder.endArray();
   }
 
-  static void write(Writer w, JSONObject json) throws IOException {
-    String message = json.getString(MESSAGE_KEY);
-    JSONArray annotations = json.optJSONArray(ANNOTATIONS_KEY);
-    if (annotations == null) {
-      w.write(message);
-    } else {
-      int pos = 0;
-      for (Object o : annotations) {
-        JSONObject annotation = (JSONObject) o;
-        int position = annotation.getInt(POSITION_KEY);
-        String note = annotation.getString(NOTE_KEY);
-        w.write(message, pos, position - pos);
-        w.write(ConsoleNote.PREAMBLE_STR);
-        w.write(note);
-        w.write(ConsoleNote.POSTAMBLE_STR);
-        pos = position;
+  /**
+   * @return index of the first occurrence of the pattern in the bytes between from and to, or -1 if it is not found.
+   */
+  static int indexOf(byte[] b, int from, int to, byte[] pattern) {
+    byte first = pattern[0];
+    int last = to - pattern.length;
+    for (int i = from; i <= last; i++) {
+      if (b[i] != first) {
+        continue;
+      }
+      int j = 1;
+      while (j < pattern.length && b[i + j] == pattern[j]) {
+        j++;
+      }
+      if (j == pattern.length) {
+        return i;
       }
-      w.write(message, pos, message.length() - pos);
     }
+    return -1;
+  }
+
+  /**
+   * Writes a log line from the source of its event in Elasticsearch, with its console notes.
+   * The source is parsed as a stream, only the message and the annotations are decoded.
+   */
+  static void write(Writer w, BytesReference source) throws IOException {
+    String message = "";
+    List<Integer> positions = new ArrayList<>();
+    List<String> notes = new ArrayList<>();
+    try (XContentParser parser = XContentType.JSON.xContent()
+                                                  .createParser(NamedXContentRegistry.EMPTY,
+                                                                DeprecationHandler.IGNORE_DEPRECATIONS,
+                                                                source.streamInput()
+                                                               )) {
+      if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+        throw new IOException("the source of the log line is not an object");
+      }
+      while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+        String name = parser.currentName();
+        XContentParser.Token token = parser.nextToken();
+        if (MESSAGE_KEY.equals(name) && token.isValue()) {
+          message = parser.text();
+        } else if (ANNOTATIONS_KEY.equals(name) && token == XContentParser.Token.START_ARRAY) {
+          while (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+            int position = 0;
+            String note = "";
+            while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+              String field = parser.currentName();
+              parser.nextToken();
+              if (POSITION_KEY.equals(field)) {
+                position = parser.intValue();
+              } else if (NOTE_KEY.equals(field)) {
+                note = parser.text();
+              } else {
+                parser.skipChildren();
+              }
+            }
+            positions.add(position);
+            notes.add(note);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    int pos = 0;
+    for (int i = 0; i < positions.size(); i++) {
+      int position = Math.max(pos, Math.min(positions.get(i), message.length()));
+      w.write(message, pos, position - pos);
+      w.write(ConsoleNote.PREAMBLE_STR);
+      w.write(notes.get(i));
+      w.write(ConsoleNote.POSTAMBLE_STR);
+      pos = position;
+    }
+    w.write(message, pos, message.length() - pos);
     w.write('\n');
   }
 
@@ -0,0 +1,386 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Encodes one event as a line of JSON in a byte buffer that is reused for every event.
+ * It writes the UTF-8 bytes of the fields directly, without building a map or a String of the event.
+ * Every event must be written between {@link #begin()} and {@link #end()}, the buffer returned by {@link #end()}
+ * is only valid until the next event is started.
+ */
+class EventEncoder {
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private int count;
+  /**
+   * Whether the next member of the current object or array needs a comma before it.
+   */
+  private boolean comma;
+
+  /**
+   * Starts a new event, discarding the previous one.
+   */
+  @NonNull
+  EventEncoder begin() {
+    count = 0;
+    comma = false;
+    append((byte) '{');
+    return this;
+  }
+
+  /**
+   * Finishes the event with a new line.
+   *
+   * @return the encoded event, it wraps the internal buffer so it is not valid after the next {@link #begin()}.
+   */
+  @NonNull
+  ByteBuffer end() {
+    append((byte) '}');
+    append((byte) '\n');
+    return ByteBuffer.wrap(buffer, 0, count);
+  }
+
+  /**
+   * Adds fields encoded before with {@link #getFields()}, they are copied as they are.
+   */
+  @NonNull
+  EventEncoder fields(@NonNull byte[] fields) {
+    if (fields.length == 0) {
+      return this;
+    }
+    if (comma) {
+      append((byte) ',');
+    }
+    ensureCapacity(fields.length);
+    System.arraycopy(fields, 0, buffer, count, fields.length);
+    count += fields.length;
+    comma = true;
+    return this;
+  }
+
+  /**
+   * @return the fields of the current event encoded, to add them to other events with {@link #fields(byte[])}.
+   */
+  @NonNull
+  byte[] getFields() {
+    return Arrays.copyOfRange(buffer, 1, count);
+  }
+
+  /**
+   * Adds a String field, a null value is written as JSON null.
+   */
+  @NonNull
+  EventEncoder field(@NonNull String name, CharSequence value) {
+    name(name);
+    if (value == null) {
+      append((byte) 'n', (byte) 'u', (byte) 'l', (byte) 'l');
+    } else {
+      string(value);
+    }
+    return this;
+  }
+
+  /**
+   * Adds a String field from UTF-8 encoded bytes.
+   */
+  @NonNull
+  EventEncoder field(@NonNull String name, @NonNull byte[] b, int from, int to) {
+    beginString(name);
+    string(b, from, to);
+    return endString();
+  }
+
+  /**
+   * Starts a String field whose value is written in several parts with {@link #string(byte[], int, int)}.
+   */
+  @NonNull
+  EventEncoder beginString(@NonNull String name) {
+    name(name);
+    append((byte) '"');
+    return this;
+  }
+
+  @NonNull
+  EventEncoder endString() {
+    append((byte) '"');
+    return this;
+  }
+
+  /**
+   * Appends UTF-8 encoded bytes to the String started with {@link #beginString(String)}.
+   * The bytes are copied without decoding them, the malformed sequences are replaced by U+FFFD.
+   *
+   * @return number of UTF-16 chars of the text appended, as they would be counted by {@link String#length()}.
+   */
+  int string(@NonNull byte[] b, int from, int to) {
+    // the worst case is a control character escaped as six bytes
+    ensureCapacity((to - from) * 6);
+    byte[] buf = buffer;
+    int pos = count;
+    int chars = 0;
+    int i = from;
+    while (i < to) {
+      int b0 = b[i];
+      if (b0 >= 0) {
+        if (b0 >= 0x20 && b0 != '"' && b0 != '\\') {
+          buf[pos++] = (byte) b0;
+        } else {
+          pos = escape(buf, pos, (char) b0);
+        }
+        i++;
+        chars++;
+        continue;
+      }
+      int length = sequenceLength(b, i, to);
+      if (length == 0) {
+        pos = codePoint(buf, pos, REPLACEMENT_CHARACTER);
+        i++;
+        chars++;
+      } else {
+        System.arraycopy(b, i, buf, pos, length);
+        pos += length;
+        i += length;
+        chars += length == 4 ? 2 : 1;
+      }
+    }
+    count = pos;
+    return chars;
+  }
+
+  /**
+   * Adds a numeric field.
+   */
+  @NonNull
+  EventEncoder field(@NonNull String name, long value) {
+    name(name);
+    number(value);
+    return this;
+  }
+
+  /**
+   * Starts an array field, its elements are objects started with {@link #beginObject()}.
+   */
+  @NonNull
+  EventEncoder beginArray(@NonNull String name) {
+    name(name);
+    append((byte) '[');
+    comma = false;
+    return this;
+  }
+
+  @NonNull
+  EventEncoder endArray() {
+    append((byte) ']');
+    comma = true;
+    return this;
+  }
+
+  /**
+   * Starts an object as an element of the current array.
+   */
+  @NonNull
+  EventEncoder beginObject() {
+    if (comma) {
+      append((byte) ',');
+    }
+    append((byte) '{');
+    comma = false;
+    return this;
+  }
+
+  @NonNull
+  EventEncoder endObject() {
+    append((byte) '}');
+    comma = true;
+    return this;
+  }
+
+  /**
+   * @return size in bytes of the current event.
+   */
+  int size() {
+    return count;
+  }
+
+  private void name(@NonNull String name) {
+    if (comma) {
+      append((byte) ',');
+    }
+    string(name);
+    append((byte) ':');
+    comma = true;
+  }
+
+  private void number(long value) {
+    if (value == Long.MIN_VALUE) {
+      byte[] digits = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+      ensureCapacity(digits.length);
+      System.arraycopy(digits, 0, buffer, count, digits.length);
+      count += digits.length;
+      return;
+    }
+    if (value < 0) {
+      append((byte) '-');
+      value = -value;
+    }
+    int digits = 1;
+    for (long n = value / 10; n > 0; n /= 10) {
+      digits++;
+    }
+    ensureCapacity(digits);
+    for (int i = count + digits - 1; i >= count; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    count += digits;
+  }
+
+  /**
+   * Writes a JSON string encoded in UTF-8, the unpaired surrogates are replaced by U+FFFD.
+   */
+  private void string(@NonNull CharSequence value) {
+    int length = value.length();
+    // the worst case is a control character escaped as six bytes
+    ensureCapacity(length * 6 + 2);
+    byte[] buf = buffer;
+    int pos = count;
+    buf[pos++] = '"';
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (c >= 0x20 && c != '"' && c != '\\') {
+          buf[pos++] = (byte) c;
+        } else {
+          pos = escape(buf, pos, c);
+        }
+      } else if (c < 0x800) {
+        buf[pos++] = (byte) (0xC0 | (c >> 6));
+        buf[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        int codePoint = REPLACEMENT_CHARACTER;
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+          codePoint = Character.toCodePoint(c, value.charAt(++i));
+        }
+        pos = codePoint(buf, pos, codePoint);
+      } else {
+        pos = codePoint(buf, pos, c);
+      }
+    }
+    buf[pos++] = '"';
+    count = pos;
+  }
+
+  /**
+   * @return length of the well-formed UTF-8 sequence that starts with a non ASCII byte, 0 if it is malformed.
+   */
+  private static int sequenceLength(byte[] b, int i, int to) {
+    int b0 = b[i] & 0xFF;
+    if (b0 >= 0xC2 && b0 <= 0xDF) {
+      return i + 1 < to && isContinuation(b[i + 1]) ? 2 : 0;
+    }
+    if (b0 >= 0xE0 && b0 <= 0xEF) {
+      if (i + 2 >= to || !isContinuation(b[i + 1]) || !isContinuation(b[i + 2])) {
+        return 0;
+      }
+      int b1 = b[i + 1] & 0xFF;
+      // overlong encodings and surrogates
+      if ((b0 == 0xE0 && b1 < 0xA0) || (b0 == 0xED && b1 > 0x9F)) {
+        return 0;
+      }
+      return 3;
+    }
+    if (b0 >= 0xF0 && b0 <= 0xF4) {
+      if (i + 3 >= to || !isContinuation(b[i + 1]) || !isContinuation(b[i + 2]) || !isContinuation(b[i + 3])) {
+        return 0;
+      }
+      int b1 = b[i + 1] & 0xFF;
+      // overlong encodings and code points over U+10FFFF
+      if ((b0 == 0xF0 && b1 < 0x90) || (b0 == 0xF4 && b1 > 0x8F)) {
+        return 0;
+      }
+      return 4;
+    }
+    return 0;
+  }
+
+  private static boolean isContinuation(byte b) {
+    return (b & 0xC0) == 0x80;
+  }
+
+  private static int escape(byte[] buf, int pos, char c) {
+    buf[pos++] = '\\';
+    switch (c) {
+      case '"':
+        buf[pos++] = '"';
+        break;
+      case '\\':
+        buf[pos++] = '\\';
+        break;
+      case '\n':
+        buf[pos++] = 'n';
+        break;
+      case '\r':
+        buf[pos++] = 'r';
+        break;
+      case '\t':
+        buf[pos++] = 't';
+        break;
+      case '\b':
+        buf[pos++] = 'b';
+        break;
+      case '\f':
+        buf[pos++] = 'f';
+        break;
+      default:
+        buf[pos++] = 'u';
+        buf[pos++] = '0';
+        buf[pos++] = '0';
+        buf[pos++] = HEX[(c >> 4) & 0xF];
+        buf[pos++] = HEX[c & 0xF];
+    }
+    return pos;
+  }
+
+  private static int codePoint(byte[] buf, int pos, int codePoint) {
+    if (codePoint < 0x10000) {
+      buf[pos++] = (byte) (0xE0 | (codePoint >> 12));
+      buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+    } else {
+      buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+      buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+      buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+    }
+    buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+    return pos;
+  }
+
+  private void append(byte b) {
+    ensureCapacity(1);
+    buffer[count++] = b;
+  }
+
+  private void append(byte b0, byte b1, byte b2, byte b3) {
+    ensureCapacity(4);
+    buffer[count++] = b0;
+    buffer[count++] = b1;
+    buffer[count++] = b2;
+    buffer[count++] = b3;
+  }
+
+  private void ensureCapacity(int length) {
+    int required = count + length;
+    if (required > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, required));
+    }
+  }
+}
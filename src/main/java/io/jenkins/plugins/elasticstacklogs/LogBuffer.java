@@ -0,0 +1,606 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.log.Retriever;
+import org.apache.commons.io.IOUtils;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.kohsuke.stapler.framework.io.ByteBuffer;
+
+/**
+ * Log text of a build or a step stored in Elasticsearch.
+ * The log is not kept in memory, it is read page by page from a point in time while the consumer reads the stream,
+ * so the memory used by every console view is bounded by the page size.
+ * <p>
+ * While the build runs, the byte offset of the end of the last line of every page that is followed by a line with a
+ * greater timestamp and sequence number is kept as a checkpoint, with the timestamp and sequence number of the line.
+ * When the log is read again from an offset (the console of a running build polls from the last size it saw)
+ * the search starts after the closest checkpoint instead of reading the log from the beginning.
+ * The checkpoint does not keep the shard and document tiebreaker of its point in time, it is not valid in another
+ * one, the search starts after every line with the same timestamp and sequence number.
+ * The log lines are indexed some time after their timestamp, so while the build runs only the lines older than
+ * {@link LogCache#SETTLE_MILLIS} are kept as checkpoints, the lines that arrive late land after the checkpoints
+ * and are shown to the viewers that are already past them.
+ * If a read finds a line at an offset that does not agree with the checkpoints, because some log lines arrived
+ * later than that, the checkpoints of the log are dropped; they are also dropped when the build is completed.
+ * Once the build is settled the log does not change, the checkpoints are kept again, apart from the ones of the
+ * running log, and the length of the log is remembered.
+ * <p>
+ * Once the build is settled, finished long enough ago to have all its log lines indexed, the pages are kept in the
+ * {@link PageCache} by their offset, so the views that request the same log again do not read it from Elasticsearch.
+ * The pages of a log that can still change are not kept, the lines indexed late would be hidden.
+ * <p>
+ * The big logs of completed builds are read with a {@link SlicedInputStream} when there are threads available,
+ * the sliced read of a settled log keeps checkpoints too, so a read that starts by skipping to an offset after
+ * a checkpoint is read page by page from it instead of reading the whole log again.
+ */
+class LogBuffer extends ByteBuffer {
+  private static final Logger LOGGER = Logger.getLogger(LogBuffer.class.getName());
+  static final String INDEX_NOT_FOUND = "The index pattern configured does not exists\n";
+  private static final int MAX_CHECKPOINTS = 1000;
+  /**
+   * Number of sort values that identify the position of a line in the log, the timestamp and the sequence number.
+   */
+  private static final int LINE_SORT_VALUES = 2;
+  private static final int MAX_LOGS = 1000;
+  /**
+   * Max number of searches of a multi search request.
+   */
+  private static final int MAX_MULTI_SEARCH = 50;
+  /**
+   * Number of log lines of the first pages read in advance, most step logs fit in it.
+   */
+  static final int PREFETCH_PAGE_SIZE = 100;
+  /**
+   * Max bytes of the first pages read in advance at once, so they do not evict the rest of the {@link PageCache}.
+   */
+  private static final long MAX_PREFETCH_BYTES = 8 * 1024 * 1024L;
+  /**
+   * Checkpoints of the last logs read, by Elasticsearch URL, index, build, and node.
+   * The maps of checkpoints are only used while holding the lock of this map.
+   */
+  private static final Map<String, NavigableMap<Long, Object[]>> CHECKPOINTS = new LinkedHashMap<String,
+    NavigableMap<Long, Object[]>>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, NavigableMap<Long, Object[]>> eldest) {
+      return size() > MAX_LOGS;
+    }
+  };
+  /**
+   * Lengths of the last settled logs read, by Elasticsearch URL, index, build, and node.
+   */
+  private static final Map<String, Long> LENGTHS = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+      return size() > MAX_LOGS;
+    }
+  };
+
+  @NonNull
+  private final Retriever retriever;
+  @NonNull
+  private final String buildKey;
+  @CheckForNull
+  private final String nodeId;
+  private final int pageSize;
+  private final boolean completed;
+  private final boolean settled;
+  private final int slices;
+  @NonNull
+  private final String logKey;
+  @NonNull
+  private final String checkpointsKey;
+  private long length = -1;
+
+  /**
+   * @param retriever retriever of the log lines.
+   * @param buildKey  key of the build.
+   * @param nodeId    if defined, limit the log to the lines of this node.
+   * @param pageSize  number of log lines read from Elasticsearch at once.
+   * @param completed true if no more log lines will be added.
+   * @param settled   true if every log line is indexed, the pages are kept in the {@link PageCache}.
+   * @param slices    number of slices to read the log in parallel, 0 to read it page by page.
+   */
+  LogBuffer(@NonNull Retriever retriever, @NonNull String buildKey, @CheckForNull String nodeId, int pageSize,
+            boolean completed, boolean settled, int slices) {
+    this.retriever = retriever;
+    this.buildKey = buildKey;
+    this.nodeId = nodeId;
+    this.pageSize = pageSize;
+    this.completed = completed;
+    this.settled = settled;
+    this.slices = slices;
+    this.logKey = logKey(retriever, buildKey, nodeId);
+    this.checkpointsKey = settled ? logKey + "\nsettled" : logKey;
+    if (completed) {
+      synchronized (CHECKPOINTS) {
+        CHECKPOINTS.remove(logKey);
+      }
+    }
+  }
+
+  /**
+   * Reads the first page of the logs of many nodes of a settled build with multi search requests, and keeps them
+   * in the {@link PageCache}, so the logs of those nodes do not need a request to show their first page.
+   * The pages have {@link #PREFETCH_PAGE_SIZE} lines, and no more pages are read once they reach
+   * {@link #MAX_PREFETCH_BYTES}.
+   *
+   * @param retriever retriever of the log lines.
+   * @param buildKey  key of the build.
+   * @param nodes     IDs of the nodes.
+   * @throws IOException
+   */
+  static void prefetch(@NonNull Retriever retriever, @NonNull String buildKey, @NonNull List<String> nodes)
+    throws IOException {
+    List<String> nodeIds = new ArrayList<>();
+    for (String nodeId : nodes) {
+      if (!PageCache.contains(pageKey(logKey(retriever, buildKey, nodeId), PREFETCH_PAGE_SIZE, 0))) {
+        nodeIds.add(nodeId);
+      }
+    }
+    if (nodeIds.isEmpty() || !retriever.indexExists()) {
+      return;
+    }
+    String pointInTimeId = retriever.openPointInTime();
+    long bytes = 0;
+    try {
+      for (int from = 0; from < nodeIds.size() && bytes < MAX_PREFETCH_BYTES; from += MAX_MULTI_SEARCH) {
+        List<String> batch = nodeIds.subList(from, Math.min(from + MAX_MULTI_SEARCH, nodeIds.size()));
+        MultiSearchResponse.Item[] items = retriever.firstPages(pointInTimeId, buildKey, batch, PREFETCH_PAGE_SIZE)
+                                                    .getResponses();
+        for (int i = 0; i < items.length; i++) {
+          String nodeId = batch.get(i);
+          if (items[i].isFailure()) {
+            LOGGER.log(Level.FINE, "failed to read the log of the node " + nodeId, items[i].getFailure());
+            continue;
+          }
+          SearchHit[] searchHits = items[i].getResponse().getHits().getHits();
+          boolean last = searchHits.length < PREFETCH_PAGE_SIZE;
+          PageOutputStream out = new PageOutputStream();
+          writeLines(searchHits, out);
+          bytes += out.size();
+          Object[] searchAfter = searchHits.length > 0 ? searchHits[searchHits.length - 1].getSortValues() : null;
+          PageCache.put(pageKey(logKey(retriever, buildKey, nodeId), PREFETCH_PAGE_SIZE, 0),
+                        new PageCache.Page(out.toByteArray(), withoutTiebreaker(searchAfter), last)
+                       );
+        }
+      }
+    } finally {
+      retriever.closePointInTime(pointInTimeId);
+    }
+  }
+
+  /**
+   * @return key of the log of a node, or of the build if the node is null.
+   */
+  @NonNull
+  private static String logKey(@NonNull Retriever retriever, @NonNull String buildKey, @CheckForNull String nodeId) {
+    return retriever.getUrl() + '\n' + retriever.getIndex() + '\n' + buildKey + '\n' + nodeId;
+  }
+
+  /**
+   * @return key of a page in the {@link PageCache}.
+   */
+  @NonNull
+  private static String pageKey(@NonNull String logKey, int pageSize, long offset) {
+    return logKey + '\n' + pageSize + '\n' + offset;
+  }
+
+  /**
+   * Writes the log lines rendered as the console shows them.
+   */
+  private static void writeLines(@NonNull SearchHit[] searchHits, @NonNull OutputStream out) throws IOException {
+    Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    for (SearchHit line : searchHits) {
+      ConsoleNotes.write(w, line.getSourceRef());
+    }
+    w.flush();
+  }
+
+  /**
+   * Compares the position of two log lines by their timestamp and sequence number, ignoring the tiebreaker.
+   */
+  static int compareLines(@NonNull Object[] a, @NonNull Object[] b) {
+    for (int i = 0; i < LINE_SORT_VALUES && i < a.length && i < b.length; i++) {
+      int c = Long.compare(((Number) a[i]).longValue(), ((Number) b[i]).longValue());
+      if (c != 0) {
+        return c;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * The tiebreaker of a point in time is not valid in another one, it is replaced by the max value,
+   * so in any point in time the search starts after every line with the same timestamp and sequence number.
+   *
+   * @return a copy of the sort values of a line without the tiebreaker, null if they are null.
+   */
+  @CheckForNull
+  static Object[] withoutTiebreaker(@CheckForNull Object[] sortValues) {
+    if (sortValues == null) {
+      return null;
+    }
+    Object[] values = Arrays.copyOf(sortValues, sortValues.length);
+    for (int i = LINE_SORT_VALUES; i < values.length; i++) {
+      values[i] = Long.MAX_VALUE;
+    }
+    return values;
+  }
+
+  /**
+   * @return true if the index pattern of the log exists.
+   */
+  boolean indexExists() throws IOException {
+    return retriever.indexExists();
+  }
+
+  /**
+   * The length is not stored in Elasticsearch, the first time it is requested the log is read without keeping it
+   * from the last checkpoint.
+   * If the log cannot be read the length is not cached and the failure is thrown, a partial length would make
+   * the console send the log again from the beginning.
+   * The length of a settled log is remembered, it is read only once.
+   *
+   * @throws UncheckedIOException if the log cannot be read.
+   */
+  @Override
+  public synchronized long length() {
+    if (length < 0 && settled) {
+      synchronized (LENGTHS) {
+        length = LENGTHS.getOrDefault(logKey, -1L);
+      }
+    }
+    if (length < 0) {
+      long skipped = 0;
+      try (InputStream in = newInputStream()) {
+        long n;
+        while ((n = in.skip(Long.MAX_VALUE)) > 0) {
+          skipped += n;
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("failed to read the log length of " + buildKey, e);
+      }
+      length = skipped;
+      if (settled) {
+        synchronized (LENGTHS) {
+          LENGTHS.put(logKey, length);
+        }
+      }
+    }
+    return length;
+  }
+
+  @Override
+  public void writeTo(OutputStream os) throws IOException {
+    InputStream sliced = openSliced();
+    if (sliced != null) {
+      try (InputStream in = sliced) {
+        IOUtils.copy(in, os);
+      }
+      return;
+    }
+    try (PageInputStream in = new PageInputStream()) {
+      while (in.fill()) {
+        os.write(in.page, in.position, in.limit - in.position);
+        in.position = in.limit;
+      }
+    }
+  }
+
+  @Override
+  public InputStream newInputStream() {
+    return slices < 2 ? new PageInputStream() : new BigLogInputStream();
+  }
+
+  /**
+   * @return the stream that reads the slices in parallel, null if the log is read page by page.
+   */
+  @CheckForNull
+  private InputStream openSliced() {
+    if (slices < 2) {
+      return null;
+    }
+    return SlicedInputStream.open(retriever, buildKey, nodeId, pageSize, slices, settled ? this::addCheckpoint : null);
+  }
+
+  /**
+   * @return true if there is a checkpoint at or before the offset.
+   */
+  private boolean hasCheckpoint(long offset) {
+    synchronized (CHECKPOINTS) {
+      NavigableMap<Long, Object[]> checkpoints = CHECKPOINTS.get(checkpointsKey);
+      return checkpoints != null && checkpoints.floorKey(offset) != null;
+    }
+  }
+
+  /**
+   * Keeps a checkpoint after a line, without the tiebreaker of the point in time, see {@link #withoutTiebreaker}.
+   * If the checkpoint does not agree with the ones kept, the offsets of the log changed and they are dropped.
+   */
+  private void addCheckpoint(long offset, @NonNull Object[] sortValues) {
+    Object[] values = withoutTiebreaker(sortValues);
+    synchronized (CHECKPOINTS) {
+      NavigableMap<Long, Object[]> checkpoints = CHECKPOINTS.computeIfAbsent(checkpointsKey, k -> new TreeMap<>());
+      Object[] same = checkpoints.get(offset);
+      Map.Entry<Long, Object[]> lower = checkpoints.lowerEntry(offset);
+      Map.Entry<Long, Object[]> higher = checkpoints.higherEntry(offset);
+      boolean agree = (same == null || compareLines(same, values) == 0)
+                      && (lower == null || compareLines(lower.getValue(), values) < 0)
+                      && (higher == null || compareLines(higher.getValue(), values) > 0);
+      if (!agree) {
+        LOGGER.log(Level.FINE, "the offsets of the log of {0} changed, dropping its checkpoints", buildKey);
+        checkpoints.clear();
+      }
+      checkpoints.put(offset, values);
+      if (checkpoints.size() > MAX_CHECKPOINTS) {
+        checkpoints.pollFirstEntry();
+      }
+    }
+  }
+
+  /**
+   * Reads a big log from the slices, unless the first operation skips to an offset after a checkpoint,
+   * then it is read page by page from the checkpoint. If there are no threads for the slices it is read page by page.
+   */
+  private class BigLogInputStream extends InputStream {
+    @CheckForNull
+    private InputStream in;
+
+    @Override
+    public int read() throws IOException {
+      return open(0).read();
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+      return open(0).read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      return open(n).skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return in != null ? in.available() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (in != null) {
+        in.close();
+      }
+    }
+
+    @NonNull
+    private InputStream open(long offset) {
+      if (in == null) {
+        InputStream sliced = offset > 0 && hasCheckpoint(offset) ? null : openSliced();
+        in = sliced != null ? sliced : new PageInputStream();
+      }
+      return in;
+    }
+  }
+
+  /**
+   * Reads the log lines page by page, the point in time is opened on the first read and closed after the last page.
+   */
+  private class PageInputStream extends InputStream {
+    private final PageOutputStream pageBuffer = new PageOutputStream();
+    private byte[] page = new byte[0];
+    /**
+     * Offset in the log of the first byte of the page.
+     */
+    private long pageOffset;
+    private int position;
+    private int limit;
+    @CheckForNull
+    private String pointInTimeId;
+    @CheckForNull
+    private Object[] searchAfter;
+    private boolean last;
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return page[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int n = Math.min(len, limit - position);
+      System.arraycopy(page, position, b, off, n);
+      position += n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = 0;
+      if (pageOffset == 0 && limit == 0 && !last && n > 0) {
+        skipped = startFromCheckpoint(n);
+      }
+      while (skipped < n && fill()) {
+        int step = (int) Math.min(n - skipped, limit - position);
+        position += step;
+        skipped += step;
+      }
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+      last = true;
+      position = limit;
+      closePointInTime();
+    }
+
+    /**
+     * Moves the stream to the closest checkpoint before an offset, it is only possible before reading the first page.
+     *
+     * @return the offset of the checkpoint, 0 if there is no checkpoint.
+     */
+    private long startFromCheckpoint(long offset) {
+      Map.Entry<Long, Object[]> checkpoint;
+      synchronized (CHECKPOINTS) {
+        NavigableMap<Long, Object[]> checkpoints = CHECKPOINTS.get(checkpointsKey);
+        checkpoint = checkpoints != null ? checkpoints.floorEntry(offset) : null;
+      }
+      if (checkpoint == null) {
+        return 0;
+      }
+      pageOffset = checkpoint.getKey();
+      searchAfter = checkpoint.getValue();
+      return pageOffset;
+    }
+
+    /**
+     * @return true if there are bytes to read in the current page, a new page is read if needed.
+     */
+    private boolean fill() throws IOException {
+      while (position >= limit) {
+        if (last) {
+          return false;
+        }
+        nextPage();
+      }
+      return true;
+    }
+
+    private void nextPage() throws IOException {
+      long offset = pageOffset + limit;
+      String pageKey = pageKey(logKey, pageSize, offset);
+      PageCache.Page cached = settled ? PageCache.get(pageKey) : null;
+      String prefetchedKey = pageKey(logKey, PREFETCH_PAGE_SIZE, 0);
+      if (cached == null && settled && offset == 0 && pageSize != PREFETCH_PAGE_SIZE
+          && PageCache.contains(prefetchedKey)) {
+        // the first page read in advance, the next pages have the page size of the log
+        cached = PageCache.get(prefetchedKey);
+      }
+      if (cached != null) {
+        searchAfter = cached.searchAfter;
+        setPage(cached.bytes, cached.bytes.length, cached.last);
+      } else if (readPage() && settled) {
+        // the next page may be read from another point in time
+        PageCache.put(pageKey, new PageCache.Page(Arrays.copyOf(page, limit), withoutTiebreaker(searchAfter), last));
+      }
+      if (last) {
+        closePointInTime();
+      }
+    }
+
+    /**
+     * Reads the next page from Elasticsearch.
+     *
+     * @return false if the index does not exist, the page has an error message instead of log lines.
+     */
+    private boolean readPage() throws IOException {
+      pageBuffer.reset();
+      if (pointInTimeId == null) {
+        if (!retriever.indexExists()) {
+          pageBuffer.write(INDEX_NOT_FOUND.getBytes(StandardCharsets.UTF_8));
+          setPage(pageBuffer.getBuffer(), pageBuffer.size(), true);
+          return false;
+        }
+        pointInTimeId = retriever.openPointInTime();
+      }
+      SearchResponse searchResponse = retriever.searchAfter(pointInTimeId, buildKey, nodeId, searchAfter, pageSize);
+      if (searchResponse.pointInTimeId() != null) {
+        pointInTimeId = searchResponse.pointInTimeId();
+      }
+      SearchHit[] searchHits = searchResponse.getHits().getHits();
+      int checkpoint = completed && !settled ? -1 : lastCheckpoint(searchHits);
+      writeLines(Arrays.copyOfRange(searchHits, 0, checkpoint + 1), pageBuffer);
+      long checkpointOffset = pageOffset + limit + pageBuffer.size();
+      writeLines(Arrays.copyOfRange(searchHits, checkpoint + 1, searchHits.length), pageBuffer);
+      if (searchHits.length > 0) {
+        searchAfter = searchHits[searchHits.length - 1].getSortValues();
+      }
+      setPage(pageBuffer.getBuffer(), pageBuffer.size(), searchHits.length < pageSize);
+      if (checkpoint >= 0) {
+        addCheckpoint(checkpointOffset, searchHits[checkpoint].getSortValues());
+      }
+      return true;
+    }
+
+    /**
+     * @return index of the last line of the page followed by a line with a greater timestamp or sequence number,
+     * and older than {@link LogCache#SETTLE_MILLIS} if the log is not settled, -1 if there is none.
+     */
+    private int lastCheckpoint(@NonNull SearchHit[] searchHits) {
+      long settledBefore = settled ? Long.MAX_VALUE : System.currentTimeMillis() - LogCache.SETTLE_MILLIS;
+      for (int i = searchHits.length - 2; i >= 0; i--) {
+        Object[] sortValues = searchHits[i].getSortValues();
+        if (Retriever.timestampMillis(sortValues) < settledBefore
+            && compareLines(sortValues, searchHits[i + 1].getSortValues()) < 0) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private void setPage(@NonNull byte[] page, int size, boolean last) {
+      this.pageOffset += limit;
+      this.page = page;
+      this.position = 0;
+      this.limit = size;
+      this.last = last;
+    }
+
+    private void closePointInTime() throws IOException {
+      if (pointInTimeId != null) {
+        String id = pointInTimeId;
+        pointInTimeId = null;
+        retriever.closePointInTime(id);
+      }
+    }
+  }
+
+  /**
+   * Buffer of a page whose array is read without copying it.
+   */
+  private static class PageOutputStream extends ByteArrayOutputStream {
+    @NonNull
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.config.InputConfiguration;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.framework.io.ByteBuffer;
+import hudson.Util;
+import jenkins.model.Jenkins;
+
+/**
+ * Cache on the controller disk of the logs of the completed builds, the logs do not change once the build finishes
+ * so they are read from Elasticsearch only once. Every log is stored compressed in a file named after the build key
+ * and the node id, the files used least recently are deleted when the cache reaches its max size.
+ * The logs are written in the cache by a background thread, only one at a time, and a log is not read from
+ * Elasticsearch again while it is being cached.
+ */
+final class LogCache {
+  private static final Logger LOGGER = Logger.getLogger(LogCache.class.getName());
+  /**
+   * System property to change the directory of the cache, by default JENKINS_HOME/elastic-stack-logs/cache.
+   */
+  public static final String CACHE_DIR_PROPERTY = LogCache.class.getName() + ".dir";
+  /**
+   * Milliseconds to wait after the end of a build before caching its log, to give time to the last log lines
+   * to be indexed.
+   */
+  static final long SETTLE_MILLIS = Long.getLong(LogCache.class.getName() + ".settleMillis", 5 * 60 * 1000L);
+  private static final String SUFFIX = ".log.gz";
+  /**
+   * The gzip trailer stores the length of the log modulo 2^32, bigger logs are not cached.
+   */
+  private static final long MAX_LENGTH = 0xFFFFFFFFL;
+  /**
+   * Files of the logs being written in the cache.
+   */
+  private static final Set<File> FILLING = new HashSet<>();
+  private static final ExecutorService FILLER = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "Elastic Stack logs cache fill");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  @NonNull
+  private final Path dir;
+  private final long maxSize;
+
+  /**
+   * @param dir     directory of the cache.
+   * @param maxSize max size in bytes of the files in the cache.
+   */
+  LogCache(@NonNull Path dir, long maxSize) {
+    this.dir = dir;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return the cache of the configuration, null if the cache is disabled.
+   */
+  @CheckForNull
+  static LogCache get() {
+    int cacheSize = InputConfiguration.get().getCacheSize();
+    if (cacheSize <= 0) {
+      return null;
+    }
+    return new LogCache(directory(), cacheSize * 1024L * 1024L);
+  }
+
+  @NonNull
+  private static Path directory() {
+    String dir = System.getProperty(CACHE_DIR_PROPERTY);
+    if (StringUtils.isNotBlank(dir)) {
+      return Paths.get(dir);
+    }
+    return Jenkins.get().getRootDir().toPath().resolve("elastic-stack-logs").resolve("cache");
+  }
+
+  /**
+   * @param buildKey key of the build.
+   * @param nodeId   node of the log, null for the log of the build.
+   * @return the cached log, null if it is not in the cache.
+   */
+  @CheckForNull
+  ByteBuffer get(@NonNull String buildKey, @CheckForNull String nodeId) {
+    File file = file(buildKey, nodeId);
+    if (!file.isFile()) {
+      return null;
+    }
+    // the modification time is the last access for the eviction
+    if (!file.setLastModified(System.currentTimeMillis())) {
+      LOGGER.log(Level.FINE, "failed to touch {0}", file);
+    }
+    return new CachedLog(file);
+  }
+
+  /**
+   * @param buildKey key of the build.
+   * @param nodeId   node of the log, null for the log of the build.
+   * @return true if the log is in the cache, it does not count as an access.
+   */
+  boolean contains(@NonNull String buildKey, @CheckForNull String nodeId) {
+    return file(buildKey, nodeId).isFile();
+  }
+
+  /**
+   * Writes a log in the cache in the background, unless it is already being written.
+   *
+   * @param buildKey key of the build.
+   * @param nodeId   node of the log, null for the log of the build.
+   * @param log      log to cache.
+   * @return true if the log will be written, false if it is already being written or cached.
+   */
+  boolean fill(@NonNull String buildKey, @CheckForNull String nodeId, @NonNull ByteBuffer log) {
+    File file = file(buildKey, nodeId);
+    synchronized (FILLING) {
+      if (file.isFile() || !FILLING.add(file)) {
+        return false;
+      }
+    }
+    FILLER.execute(() -> {
+      try {
+        put(buildKey, nodeId, log);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.log(Level.WARNING, "failed to cache the log of " + buildKey, e);
+      } finally {
+        synchronized (FILLING) {
+          FILLING.remove(file);
+        }
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Writes a log in the cache, and deletes the least recently used logs if the cache is full.
+   *
+   * @param buildKey key of the build.
+   * @param nodeId   node of the log, null for the log of the build.
+   * @param log      log to cache.
+   * @return the cached log, null if the log is empty or too big to be cached.
+   * @throws IOException if the log can not be read or written.
+   */
+  @CheckForNull
+  ByteBuffer put(@NonNull String buildKey, @CheckForNull String nodeId, @NonNull ByteBuffer log) throws IOException {
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, "log", ".tmp");
+    try {
+      CountingOutputStream counter;
+      try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+        counter = new CountingOutputStream(out);
+        log.writeTo(counter);
+      }
+      if (counter.getByteCount() == 0 || counter.getByteCount() > MAX_LENGTH) {
+        return null;
+      }
+      File file = file(buildKey, nodeId);
+      Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      evict();
+      return file.isFile() ? new CachedLog(file) : null;
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Deletes the least recently used logs until the cache size is under the max size.
+   */
+  void evict() throws IOException {
+    List<File> files = new ArrayList<>();
+    try (Stream<Path> paths = Files.list(dir)) {
+      paths.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).forEach(p -> files.add(p.toFile()));
+    }
+    files.sort(Comparator.comparingLong(File::lastModified));
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+    for (File file : files) {
+      if (size <= maxSize) {
+        break;
+      }
+      long length = file.length();
+      if (file.delete()) {
+        size -= length;
+        LOGGER.log(Level.FINE, "evicted {0}", file);
+      }
+    }
+  }
+
+  @NonNull
+  File file(@NonNull String buildKey, @CheckForNull String nodeId) {
+    return dir.resolve(Util.getDigestOf(buildKey + '#' + (nodeId != null ? nodeId : "")) + SUFFIX).toFile();
+  }
+
+  /**
+   * Log read from a compressed file of the cache.
+   */
+  private static class CachedLog extends ByteBuffer {
+    @NonNull
+    private final File file;
+    private long length = -1;
+
+    CachedLog(@NonNull File file) {
+      this.file = file;
+    }
+
+    /**
+     * The length of the log is read from the gzip trailer.
+     */
+    @Override
+    public synchronized long length() {
+      if (length < 0) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+          raf.seek(raf.length() - 4);
+          length = (raf.read() | raf.read() << 8 | raf.read() << 16 | (long) raf.read() << 24) & MAX_LENGTH;
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "failed to read the log length of " + file, e);
+          length = 0;
+        }
+      }
+      return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream os) throws IOException {
+      try (InputStream in = newInputStream()) {
+        IOUtils.copy(in, os);
+      }
+    }
+
+    /**
+     * The file can be evicted while the log is shown, in that case the log is empty.
+     */
+    @Override
+    public InputStream newInputStream() {
+      try {
+        return new GZIPInputStream(Files.newInputStream(file.toPath()));
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "failed to read the log " + file, e);
+        return new ByteArrayInputStream(new byte[0]);
+      }
+    }
+  }
+}
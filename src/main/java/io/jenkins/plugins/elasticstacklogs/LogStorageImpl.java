@@ -8,6 +8,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -30,8 +33,18 @@ import hudson.model.TaskListener;
  */
 public class LogStorageImpl implements LogStorage {
   private static final Logger LOGGER = Logger.getLogger(LogStorageImpl.class.getName());
+  /**
+   * Time between two reads in advance of the step logs of the build.
+   */
+  private static final long PREFETCH_INTERVAL_MILLIS = 30000;
+  private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "Elastic Stack logs step prefetch");
+    thread.setDaemon(true);
+    return thread;
+  });
   @NonNull
   private final BuildInfo buildInfo;
+  private final AtomicLong prefetched = new AtomicLong();
 
   public LogStorageImpl(@NonNull BuildInfo buildInfo) throws IOException {
     this.buildInfo = buildInfo;
@@ -64,12 +77,33 @@ public class LogStorageImpl implements LogStorage {
   @Override
   public AnnotatedLargeText<FlowNode> stepLog(@NonNull FlowNode flowNode, boolean complete) {
     try {
+      prefetchStepLogs(flowNode);
       return new Retriever(buildInfo).stepLog(flowNode, complete);
     } catch (Exception x) {
       return new BrokenLogStorage(x).stepLog(flowNode, complete);
     }
   }
 
+  /**
+   * The views that show many steps request the log of every step, so the first time a step log is requested
+   * the first page of every step log is read with a few requests by a background thread, the request does not wait.
+   * The steps that started since are read again after {@link #PREFETCH_INTERVAL_MILLIS}.
+   */
+  private void prefetchStepLogs(@NonNull FlowNode flowNode) {
+    long now = System.currentTimeMillis();
+    long last = prefetched.get();
+    if (now - last < PREFETCH_INTERVAL_MILLIS || !prefetched.compareAndSet(last, now)) {
+      return;
+    }
+    PREFETCHER.execute(() -> {
+      try {
+        new Retriever(buildInfo).prefetchStepLogs(flowNode.getExecution());
+      } catch (Exception x) {
+        LOGGER.log(Level.FINE, "failed to read the step logs in advance", x);
+      }
+    });
+  }
+
   @NonNull
   @SuppressFBWarnings(value = "BC_UNCONFIRMED_CAST", justification = "forBuild only accepts Run")
   @Deprecated
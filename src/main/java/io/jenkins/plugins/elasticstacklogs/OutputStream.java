@@ -6,16 +6,20 @@ package io.jenkins.plugins.elasticstacklogs;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.config.InputConf;
+import io.jenkins.plugins.elasticstacklogs.config.InputRegistry;
 import io.jenkins.plugins.elasticstacklogs.input.Input;
 import io.jenkins.plugins.elasticstacklogs.log.BuildInfo;
 import io.jenkins.plugins.elasticstacklogs.log.Retriever;
-import net.sf.json.JSONObject;
+import io.jenkins.plugins.elasticstacklogs.log.TimestampFormatter;
 import org.apache.commons.lang.StringUtils;
 import hudson.console.LineTransformationOutputStream;
 
@@ -24,48 +28,113 @@ import hudson.console.LineTransformationOutputStream;
  */
 public class OutputStream extends LineTransformationOutputStream {
   private static final Logger LOGGER = Logger.getLogger(OutputStream.class.getName());
+  /**
+   * While an input is down every line fails, only one failure per interval is logged as a warning.
+   */
+  private static final long WARNING_INTERVAL_MILLIS = 60000;
+  private static final AtomicLong NEXT_WARNING = new AtomicLong();
   @NonNull
   private final BuildInfo buildInfo;
   @CheckForNull
   private final String nodeId;
+  @NonNull
+  private final InputConf inputConf;
   @Nonnull
   private final Input input;
+  /**
+   * Encoder of the events, the buffer is reused for every line of the stream.
+   */
+  private final EventEncoder encoder = new EventEncoder();
+  private final TimestampFormatter timestamps = new TimestampFormatter();
+  /**
+   * Fields that are the same in every event of the build, encoded once.
+   */
+  @NonNull
+  private final byte[] buildFields;
+  /**
+   * Sequence number of the events of the build and node of this stream, so the events with the same timestamp keep
+   * their order. It starts on the current time in microseconds, so it is still increasing in the streams
+   * opened later for the same build and node, and after a restart.
+   * The timestamp is the time the line is written, it can be indexed much later if the input buffers or spools it.
+   */
+  private long sequence = System.currentTimeMillis() * 1000;
+  private boolean closed;
 
-  public OutputStream(@Nonnull BuildInfo buildInfo, @CheckForNull String nodeId)
+  /**
+   * @param buildInfo build of the events.
+   * @param nodeId    flow node of the events, null for the events of the build.
+   * @param inputConf configuration of the input of the listener, see {@link InputConf#forListener()}.
+   */
+  public OutputStream(@Nonnull BuildInfo buildInfo, @CheckForNull String nodeId, @NonNull InputConf inputConf)
     throws URISyntaxException, IOException {
     this.buildInfo = buildInfo;
     this.nodeId = nodeId;
-    input = buildInfo.getInput().get();
+    this.inputConf = inputConf;
+    encoder.begin()
+           .field(Retriever.JOB_BUILD, buildInfo.getBuildId())
+           .field(Retriever.JOB_NAME, buildInfo.getJobName())
+           .field(Retriever.JOB_URL, buildInfo.getJobUrl())
+           .field(Retriever.JOB_ID, buildInfo.getKey());
+    if (StringUtils.isNotBlank(nodeId)) {
+      encoder.field(Retriever.JOB_NODE, nodeId);
+    }
+    buildFields = encoder.getFields();
+    input = InputRegistry.acquire(inputConf);
   }
 
   @Override
   protected void eol(byte[] b, int len) throws IOException {
-    String now = Retriever.now();
-    Map<String, Object> data = ConsoleNotes.parse(b, len);
-    data.put(Retriever.JOB_BUILD, buildInfo.getBuildId());
-    data.put(Retriever.TIMESTAMP, now);
-    data.put(Retriever.JOB_NAME, buildInfo.getJobName());
-    data.put(Retriever.JOB_URL, buildInfo.getJobUrl());
-    data.put(Retriever.JOB_ID, buildInfo.getKey());
-    if (StringUtils.isNotBlank(nodeId)) {
-      data.put(Retriever.JOB_NODE, nodeId);
-    }
+    byte[] now = timestamps.now();
+    encoder.begin()
+           .fields(buildFields)
+           .field(Retriever.TIMESTAMP, now, 0, timestamps.length())
+           .field(Retriever.EVENT_SEQUENCE, ++sequence);
+    ConsoleNotes.encode(b, len, encoder);
     //TODO add Otel data trace_id=%X{trace_id} span_id=%X{span_id} trace_flags=%X{trace_flags}
     try {
-      if (writeOnInput(JSONObject.fromObject(data).toString())) {
-        LOGGER.log(Level.FINER, "scheduled event @{0} from {1}/{2}#{3}",
-                   new Object[] { now, buildInfo.toString(), nodeId }
-                  );
+      if (writeOnInput(encoder.end())) {
+        LOGGER.log(Level.FINER, "scheduled event from {0}#{1}", new Object[] { buildInfo, nodeId });
       } else {
         LOGGER.warning("Message buffer full, giving up");
       }
     } catch (Exception x) {
-      LOGGER.log(Level.WARNING, "failed to send a message", x);
+      logFailure(x);
+    }
+  }
+
+  private static void logFailure(@NonNull Exception x) {
+    long now = System.currentTimeMillis();
+    long next = NEXT_WARNING.get();
+    if (now >= next && NEXT_WARNING.compareAndSet(next, now + WARNING_INTERVAL_MILLIS)) {
+      LOGGER.log(Level.WARNING, "failed to send a message, the failures of the next "
+                                + WARNING_INTERVAL_MILLIS / 1000 + "s are logged at FINE level", x);
+    } else {
+      LOGGER.log(Level.FINE, "failed to send a message", x);
+    }
+  }
+
+  /**
+   * Flushes the pending line and releases the shared input.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      super.close();
+    } finally {
+      InputRegistry.release(inputConf);
     }
   }
 
-  private boolean writeOnInput(String line) throws IOException {
-    LOGGER.log(Level.FINER, "Pipeline line: {0}", line);
-    return input.write(line + "\n");
+  private boolean writeOnInput(ByteBuffer event) throws IOException {
+    if (LOGGER.isLoggable(Level.FINER)) {
+      LOGGER.log(Level.FINER, "Pipeline line: {0}",
+                 new String(event.array(), event.position(), event.remaining() - 1, StandardCharsets.UTF_8)
+                );
+    }
+    return input.write(event);
   }
 }
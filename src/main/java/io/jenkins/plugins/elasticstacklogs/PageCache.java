@@ -0,0 +1,136 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * JVM-wide cache of the rendered pages of the logs, the pipeline views request the log of the same steps many times,
+ * and a page read from Elasticsearch is reused by the next requests. The cache is bounded by the bytes of the pages,
+ * the pages used least recently are evicted first.
+ * Only the pages of the logs that do not change anymore are cached.
+ * The hits, misses, and size of the cache are logged at FINE level every {@link #STATS_INTERVAL} requests.
+ */
+final class PageCache {
+  /**
+   * System property to change the max size in bytes of the cache, 0 disables it.
+   */
+  public static final String MAX_SIZE_PROPERTY = PageCache.class.getName() + ".maxSize";
+  private static final long MAX_SIZE = Long.getLong(MAX_SIZE_PROPERTY, 64 * 1024 * 1024L);
+  static final int STATS_INTERVAL = 1000;
+  private static final Logger LOGGER = Logger.getLogger(PageCache.class.getName());
+  private static final Map<String, Page> PAGES = new LinkedHashMap<>(16, 0.75f, true);
+  private static final AtomicLong HITS = new AtomicLong();
+  private static final AtomicLong MISSES = new AtomicLong();
+  private static long size;
+
+  private PageCache() {
+  }
+
+  /**
+   * @param key key of the page, it identifies the log, the page size, and the offset of the page.
+   * @return the page, null if it is not in the cache.
+   */
+  @CheckForNull
+  static Page get(@NonNull String key) {
+    Page page;
+    synchronized (PAGES) {
+      page = PAGES.get(key);
+    }
+    (page != null ? HITS : MISSES).incrementAndGet();
+    long hits = HITS.get();
+    long misses = MISSES.get();
+    if ((hits + misses) % STATS_INTERVAL == 0) {
+      LOGGER.log(Level.FINE, "page cache hits: {0}, misses: {1}, size: {2} bytes",
+                 new Object[] { hits, misses, size() });
+    }
+    return page;
+  }
+
+  /**
+   * @return true if the page is in the cache, it does not count as a hit or a miss.
+   */
+  static boolean contains(@NonNull String key) {
+    synchronized (PAGES) {
+      return PAGES.containsKey(key);
+    }
+  }
+
+  /**
+   * Adds a page to the cache, the least recently used pages are evicted if the cache is full.
+   */
+  static void put(@NonNull String key, @NonNull Page page) {
+    if (page.bytes.length > MAX_SIZE) {
+      return;
+    }
+    synchronized (PAGES) {
+      Page old = PAGES.put(key, page);
+      size += page.bytes.length - (old != null ? old.bytes.length : 0);
+      Iterator<Page> it = PAGES.values().iterator();
+      while (size > MAX_SIZE && it.hasNext()) {
+        size -= it.next().bytes.length;
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Removes every page.
+   */
+  static void invalidate() {
+    synchronized (PAGES) {
+      PAGES.clear();
+      size = 0;
+    }
+  }
+
+  /**
+   * @return number of requests of pages found in the cache.
+   */
+  static long getHits() {
+    return HITS.get();
+  }
+
+  /**
+   * @return number of requests of pages not found in the cache.
+   */
+  static long getMisses() {
+    return MISSES.get();
+  }
+
+  /**
+   * @return bytes of the pages in the cache.
+   */
+  static long size() {
+    synchronized (PAGES) {
+      return size;
+    }
+  }
+
+  /**
+   * Rendered log lines of a page, and the sort values of its last line to request the next page,
+   * without the tiebreaker of the point in time it was read from.
+   */
+  static class Page {
+    @NonNull
+    final byte[] bytes;
+    @CheckForNull
+    final Object[] searchAfter;
+    final boolean last;
+
+    Page(@NonNull byte[] bytes, @CheckForNull Object[] searchAfter, boolean last) {
+      this.bytes = bytes;
+      this.searchAfter = searchAfter;
+      this.last = last;
+    }
+  }
+}
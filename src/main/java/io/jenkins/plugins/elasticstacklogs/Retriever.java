@@ -7,28 +7,55 @@ package io.jenkins.plugins.elasticstacklogs;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.console.AnnotatedLargeText;
+import hudson.model.Queue;
+import hudson.model.Run;
 import io.jenkins.plugins.elasticstacklogs.config.ElasticStackConfiguration;
 import io.jenkins.plugins.elasticstacklogs.config.InputConfiguration;
 import io.jenkins.plugins.elasticstacklogs.log.BuildInfo;
-import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.search.SearchHit;
+import org.jenkinsci.plugins.workflow.actions.LogAction;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.graphanalysis.DepthFirstScanner;
 import org.kohsuke.stapler.framework.io.ByteBuffer;
 
 import javax.annotation.CheckForNull;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Retrieve the logs from Elasticsearch.
  */
 public class Retriever {
+  private static final Logger LOGGER = Logger.getLogger(Retriever.class.getName());
+  /**
+   * Max number of steps whose logs are read in advance.
+   */
+  private static final int MAX_PREFETCH_NODES = 500;
+  /**
+   * Milliseconds added before the start and after the end of the build to the time range of the log searches,
+   * for the differences between the clocks of the controller and the agents.
+   */
+  static final long TIME_SKEW_MILLIS = Long.getLong(Retriever.class.getName() + ".timeSkewMillis", 15 * 60 * 1000L);
+  private static final int MAX_COUNTS = 1000;
+  /**
+   * Number of log lines of the last settled logs counted, by build key and node, they do not change.
+   */
+  private static final Map<String, Long> COUNTS = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+      return size() > MAX_COUNTS;
+    }
+  };
 
   @NonNull
   private final BuildInfo buildInfo;
@@ -39,69 +66,170 @@ public class Retriever {
 
   AnnotatedLargeText<FlowExecutionOwner.Executable> overallLog(FlowExecutionOwner.Executable build, boolean completed)
     throws IOException {
-    ByteBuffer buf = new ByteBuffer();
-    stream(buf, null);
-    return new AnnotatedLargeText<>(buf, StandardCharsets.UTF_8, completed, build);
+    Run<?, ?> run = build instanceof Run ? (Run<?, ?>) build : null;
+    return new AnnotatedLargeText<>(newLog(null, completed, run), StandardCharsets.UTF_8, completed, build);
   }
 
   AnnotatedLargeText<FlowNode> stepLog(FlowNode node, boolean completed) throws IOException {
-    ByteBuffer buf = new ByteBuffer();
-    stream(buf, node.getId());
-    return new AnnotatedLargeText<>(buf, StandardCharsets.UTF_8, completed, node);
+    Run<?, ?> run = null;
+    if (completed) {
+      Queue.Executable executable = node.getExecution().getOwner().getExecutable();
+      run = executable instanceof Run ? (Run<?, ?>) executable : null;
+    }
+    return new AnnotatedLargeText<>(newLog(node.getId(), completed, run), StandardCharsets.UTF_8, completed, node);
   }
 
   /**
-   * Gather the log text for one node or the entire build.
+   * Returns the log of a completed build from the disk cache. The first time once the build finishes the log is
+   * cached in the background, and it is read from Elasticsearch until it is in the cache.
    *
-   * @param os     where to send output
-   * @param nodeId if defined, limit output to that coming from this node
+   * @param nodeId    if defined, limit output to that coming from this node
+   * @param completed true if the log does not change.
+   * @param run       build of the log.
    */
-  private void stream(@NonNull OutputStream os, @CheckForNull String nodeId) throws IOException {
-    ElasticStackConfiguration elasticStackConfiguration = ElasticStackConfiguration.get();
-    UsernamePasswordCredentials creds = elasticStackConfiguration.getCredentials();
-    String elasticsearchUrl = elasticStackConfiguration.getElasticsearchUrl();
-    InputConfiguration inputConfiguration = InputConfiguration.get();
-    String indexPattern = inputConfiguration.getIndexPattern();
-    String username = creds.getUsername();
-    String password = creds.getPassword().getPlainText();
-    if(StringUtils.isBlank(elasticsearchUrl) || StringUtils.isBlank(indexPattern)){
-      throw new IOException("some configuration parameters are incorrect, check the plugin configuration");
+  @NonNull
+  private ByteBuffer newLog(@CheckForNull String nodeId, boolean completed, @CheckForNull Run<?, ?> run)
+    throws IOException {
+    LogBuffer logBuffer = newLogBuffer(nodeId, completed, run);
+    LogCache cache = completed && isSettled(run) ? LogCache.get() : null;
+    if (cache == null) {
+      return logBuffer;
     }
-    io.jenkins.plugins.elasticstacklogs.log.Retriever retriever = new io.jenkins.plugins.elasticstacklogs.log.Retriever(
-      elasticsearchUrl, username, password,
-      indexPattern
-    );
-    if(!retriever.indexExists()){
-      try (Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
-        w.write("The index pattern configured does not exists\n");
-        w.flush();
-      }
+    ByteBuffer cached = cache.get(buildInfo.getKey(), nodeId);
+    if (cached != null) {
+      return cached;
+    }
+    if (logBuffer.indexExists()) {
+      cache.fill(buildInfo.getKey(), nodeId, logBuffer);
+    }
+    return logBuffer;
+  }
+
+  /**
+   * @return true if the build finished long enough ago to have all its log lines indexed.
+   */
+  private static boolean isSettled(@CheckForNull Run<?, ?> run) {
+    return run != null && !run.isLogUpdated()
+           && System.currentTimeMillis() - run.getStartTimeInMillis() - run.getDuration() >= LogCache.SETTLE_MILLIS;
+  }
+
+  /**
+   * Reads the first page of the logs of the steps of a settled build with a few requests, the step logs requested
+   * later start from the pages kept in the {@link PageCache}. The pages of the builds not settled are not kept,
+   * so nothing is read. The graph is walked until {@link #MAX_PREFETCH_NODES} steps with log are found,
+   * and the steps whose log is in the {@link LogCache} are skipped.
+   *
+   * @param execution execution of the build.
+   */
+  void prefetchStepLogs(@NonNull FlowExecution execution) throws IOException {
+    Queue.Executable executable = execution.getOwner().getExecutable();
+    if (!isSettled(executable instanceof Run ? (Run<?, ?>) executable : null)) {
+      return;
+    }
+    LogCache cache = LogCache.get();
+    List<String> nodes = new ArrayList<>();
+    DepthFirstScanner scanner = new DepthFirstScanner();
+    if (!scanner.setup(execution.getCurrentHeads())) {
       return;
     }
-    try (Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
-      SearchResponse searchResponse = retriever.search(buildInfo.getKey(), nodeId);
-      String scrollId = searchResponse.getScrollId();
-      SearchHit[] searchHits = searchResponse.getHits().getHits();
-      writeOutput(w, searchHits);
+    for (FlowNode node : scanner) {
+      if (node.getAction(LogAction.class) != null
+          && (cache == null || !cache.contains(buildInfo.getKey(), node.getId()))) {
+        nodes.add(node.getId());
+        if (nodes.size() >= MAX_PREFETCH_NODES) {
+          break;
+        }
+      }
+    }
+    LogBuffer.prefetch(newRetriever(null), buildInfo.getKey(), nodes);
+  }
 
-      while (searchHits.length > 0) {
-        searchResponse = retriever.next(scrollId);
-        scrollId = searchResponse.getScrollId();
-        searchHits = searchResponse.getHits().getHits();
-        writeOutput(w, searchHits);
+  /**
+   * Creates the log text for one node or the entire build, the log lines are read when the text is consumed.
+   *
+   * @param nodeId    if defined, limit output to that coming from this node
+   * @param completed true if the log does not change.
+   * @param run       build of the log, if it is known.
+   */
+  @NonNull
+  private LogBuffer newLogBuffer(@CheckForNull String nodeId, boolean completed, @CheckForNull Run<?, ?> run)
+    throws IOException {
+    io.jenkins.plugins.elasticstacklogs.log.Retriever retriever = newRetriever(run);
+    InputConfiguration inputConfiguration = InputConfiguration.get();
+    boolean settled = completed && isSettled(run);
+    int slices = 0;
+    int parallelThreshold = inputConfiguration.getParallelThreshold();
+    // the steps of a running build are not counted, they are small and their count can not be kept
+    if (completed && parallelThreshold > 0 && (settled || nodeId == null)) {
+      try {
+        if (count(retriever, nodeId, settled) >= parallelThreshold) {
+          slices = SlicedInputStream.SLICES;
+        }
+      } catch (Exception e) {
+        LOGGER.log(Level.FINE, "failed to count the log lines of " + buildInfo.getKey(), e);
       }
+    }
+    return new LogBuffer(retriever, buildInfo.getKey(), nodeId, inputConfiguration.getPageSize(), completed,
+                         settled, slices
+    );
+  }
 
-      if (searchResponse.getHits().getTotalHits().value != 0) {
-        retriever.clear(scrollId);
+  /**
+   * @return the number of log lines of the build or node, the count of a settled log is requested only once.
+   */
+  private long count(@NonNull io.jenkins.plugins.elasticstacklogs.log.Retriever retriever,
+                     @CheckForNull String nodeId, boolean settled) throws IOException {
+    String key = retriever.getUrl() + '\n' + retriever.getIndex() + '\n' + buildInfo.getKey() + '\n' + nodeId;
+    if (settled) {
+      synchronized (COUNTS) {
+        Long count = COUNTS.get(key);
+        if (count != null) {
+          return count;
+        }
+      }
+    }
+    long count = retriever.count(buildInfo.getKey(), nodeId);
+    if (settled) {
+      synchronized (COUNTS) {
+        COUNTS.put(key, count);
       }
-      w.flush();
     }
+    return count;
   }
 
-  private void writeOutput(Writer w, SearchHit[] searchHits) throws IOException {
-    for (SearchHit line : searchHits) {
-      JSONObject json = JSONObject.fromObject(line.getSourceAsMap());
-      ConsoleNotes.write(w, json);
+  /**
+   * Creates a retriever of the log lines written from the start of the build to its end, or without end if the
+   * build is running or unknown.
+   *
+   * @param run build of the log, if it is known.
+   */
+  @NonNull
+  private io.jenkins.plugins.elasticstacklogs.log.Retriever newRetriever(@CheckForNull Run<?, ?> run)
+    throws IOException {
+    ElasticStackConfiguration elasticStackConfiguration = ElasticStackConfiguration.get();
+    UsernamePasswordCredentials creds = elasticStackConfiguration.getCredentials();
+    String elasticsearchUrl = elasticStackConfiguration.getElasticsearchUrl();
+    String indexPattern = InputConfiguration.get().getIndexPattern();
+    String username = creds.getUsername();
+    String password = creds.getPassword().getPlainText();
+    if(StringUtils.isBlank(elasticsearchUrl) || StringUtils.isBlank(indexPattern)){
+      throw new IOException("some configuration parameters are incorrect, check the plugin configuration");
     }
+    long from = 0;
+    // the build info of old builds can have no start time
+    if (StringUtils.isNotBlank(buildInfo.getStartTime())) {
+      try {
+        from = Instant.parse(buildInfo.getStartTime()).toEpochMilli() - TIME_SKEW_MILLIS;
+      } catch (DateTimeParseException e) {
+        LOGGER.log(Level.FINE, "failed to parse the start time of " + buildInfo, e);
+      }
+    }
+    long to = 0;
+    if (run != null && !run.isBuilding()) {
+      to = run.getStartTimeInMillis() + run.getDuration() + TIME_SKEW_MILLIS;
+    }
+    return new io.jenkins.plugins.elasticstacklogs.log.Retriever(elasticsearchUrl, username, password, indexPattern,
+                                                                 Math.max(from, 0), to
+    );
   }
 }
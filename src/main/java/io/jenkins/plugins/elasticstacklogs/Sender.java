@@ -12,6 +12,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.config.InputConf;
 import io.jenkins.plugins.elasticstacklogs.log.BuildInfo;
 import hudson.model.BuildListener;
 import jenkins.util.JenkinsJVM;
@@ -32,13 +33,19 @@ public class Sender implements BuildListener, Closeable {
   private final String nodeId;
   @NonNull
   private final BuildInfo buildInfo;
+  /**
+   * Input configuration of the listener, it has the secrets of the input and it is not stored with the build.
+   */
+  @NonNull
+  private final InputConf input;
 
   private transient @CheckForNull
   PrintStream logger;
 
-  public Sender(@NonNull BuildInfo buildInfo, @CheckForNull String nodeId) {
+  public Sender(@NonNull BuildInfo buildInfo, @CheckForNull String nodeId) throws IOException {
     this.buildInfo = buildInfo;
     this.nodeId = nodeId;
+    this.input = buildInfo.getInput().forListener();
   }
 
   @NonNull
@@ -46,7 +53,7 @@ public class Sender implements BuildListener, Closeable {
   public PrintStream getLogger() {
     if (logger == null) {
       try {
-        logger = new PrintStream(new OutputStream(buildInfo, nodeId), false, "UTF-8");
+        logger = new PrintStream(new OutputStream(buildInfo, nodeId, input), false, "UTF-8");
       } catch (URISyntaxException | IOException x) {
         throw new AssertionError(x);
       }
@@ -58,6 +65,7 @@ public class Sender implements BuildListener, Closeable {
   public void close() throws IOException {
     if (logger != null) {
       LOGGER.log(Level.FINE, "closing {0}#{2}", new Object[] { buildInfo.toString(), nodeId });
+      logger.close();
       logger = null;
     }
     if (nodeId != null && JenkinsJVM.isJenkinsJVM()) {
@@ -0,0 +1,358 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.log.Retriever;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Reads the log lines of a big log from the slices of a point in time in parallel.
+ * Every slice is read page by page in a thread of a shared pool, and its pages are queued until the reader
+ * merges them by timestamp and sequence number. Every slice queues a few pages at most, so the memory used
+ * is bounded by the number of slices and the page size.
+ * The stream can keep checkpoints of the merged log, about one per page size lines, after a line followed by a line
+ * with a greater timestamp or sequence number.
+ */
+class SlicedInputStream extends InputStream {
+  private static final Logger LOGGER = Logger.getLogger(SlicedInputStream.class.getName());
+  /**
+   * Number of slices of every log.
+   */
+  static final int SLICES = 4;
+  private static final int MAX_THREADS = 8;
+  private static final int QUEUED_PAGES = 2;
+  /**
+   * Every stream takes a thread per slice before starting, so the slices of a stream never wait for the threads
+   * used by other streams.
+   */
+  private static final Semaphore THREADS = new Semaphore(MAX_THREADS);
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r, "Elastic Stack logs sliced retrieval");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  @NonNull
+  private final Retriever retriever;
+  @NonNull
+  private final String buildKey;
+  @CheckForNull
+  private final String nodeId;
+  private final int pageSize;
+  private final int slices;
+  @CheckForNull
+  private final BiConsumer<Long, Object[]> checkpoints;
+  private final List<Future<?>> futures = new ArrayList<>();
+  @CheckForNull
+  private PriorityQueue<Cursor> cursors;
+  @CheckForNull
+  private String pointInTimeId;
+  private volatile boolean closed;
+  private byte[] line = new byte[0];
+  private int position;
+  /**
+   * Offset in the log of the first byte of the line.
+   */
+  private long offset;
+  @CheckForNull
+  private Object[] sortValues;
+  private int linesSinceCheckpoint;
+
+  private SlicedInputStream(@NonNull Retriever retriever, @NonNull String buildKey, @CheckForNull String nodeId,
+                            int pageSize, int slices, @CheckForNull BiConsumer<Long, Object[]> checkpoints) {
+    this.retriever = retriever;
+    this.buildKey = buildKey;
+    this.nodeId = nodeId;
+    this.pageSize = pageSize;
+    this.slices = slices;
+    this.checkpoints = checkpoints;
+  }
+
+  /**
+   * @param retriever   retriever of the log lines.
+   * @param buildKey    key of the build.
+   * @param nodeId      if defined, limit the log to the lines of this node.
+   * @param pageSize    number of log lines read from Elasticsearch at once by every slice.
+   * @param slices      number of slices, at least 2.
+   * @param checkpoints receives the offset and sort values of the checkpoints, null to keep none.
+   * @return the stream, null if the threads to read the slices are busy.
+   */
+  @CheckForNull
+  static SlicedInputStream open(@NonNull Retriever retriever, @NonNull String buildKey,
+                                @CheckForNull String nodeId, int pageSize, int slices,
+                                @CheckForNull BiConsumer<Long, Object[]> checkpoints) {
+    if (!THREADS.tryAcquire(slices)) {
+      return null;
+    }
+    return new SlicedInputStream(retriever, buildKey, nodeId, pageSize, slices, checkpoints);
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return line[position++] & 0xFF;
+  }
+
+  @Override
+  public int read(@NonNull byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int n = Math.min(len, line.length - position);
+    System.arraycopy(line, position, b, off, n);
+    position += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = 0;
+    while (skipped < n && fill()) {
+      int step = (int) Math.min(n - skipped, line.length - position);
+      position += step;
+      skipped += step;
+    }
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return line.length - position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+    THREADS.release(slices);
+    if (pointInTimeId != null) {
+      retriever.closePointInTime(pointInTimeId);
+    }
+  }
+
+  /**
+   * @return true if there are bytes to read in the current line, the next line is merged if needed.
+   */
+  private boolean fill() throws IOException {
+    if (position < line.length) {
+      return true;
+    }
+    if (closed) {
+      return false;
+    }
+    if (cursors == null) {
+      start();
+    }
+    while (position >= line.length) {
+      Cursor cursor = cursors.poll();
+      if (cursor == null) {
+        close();
+        return false;
+      }
+      offset += line.length;
+      Object[] next = cursor.page.sortValues.get(cursor.index);
+      if (checkpoints != null && sortValues != null && ++linesSinceCheckpoint >= pageSize
+          && LogBuffer.compareLines(sortValues, next) < 0) {
+        checkpoints.accept(offset, sortValues);
+        linesSinceCheckpoint = 0;
+      }
+      sortValues = next;
+      line = cursor.page.lines.get(cursor.index);
+      position = 0;
+      if (cursor.next()) {
+        cursors.add(cursor);
+      }
+    }
+    return true;
+  }
+
+  private void start() throws IOException {
+    pointInTimeId = retriever.openPointInTime();
+    cursors = new PriorityQueue<>(slices, SlicedInputStream::compare);
+    List<Cursor> started = new ArrayList<>();
+    for (int i = 0; i < slices; i++) {
+      Slice slice = new Slice(pointInTimeId, i);
+      futures.add(EXECUTOR.submit(slice));
+      started.add(new Cursor(slice));
+    }
+    for (Cursor cursor : started) {
+      if (cursor.next()) {
+        cursors.add(cursor);
+      }
+    }
+  }
+
+  private static int compare(@NonNull Cursor a, @NonNull Cursor b) {
+    Object[] x = a.page.sortValues.get(a.index);
+    Object[] y = b.page.sortValues.get(b.index);
+    for (int i = 0; i < Math.min(x.length, y.length); i++) {
+      int c = compare(x[i], y[i]);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return Integer.compare(x.length, y.length);
+  }
+
+  private static int compare(@CheckForNull Object x, @CheckForNull Object y) {
+    if (x instanceof Number && y instanceof Number) {
+      return Long.compare(((Number) x).longValue(), ((Number) y).longValue());
+    }
+    return String.valueOf(x).compareTo(String.valueOf(y));
+  }
+
+  /**
+   * Reads the pages of a slice until the last one or until the stream is closed.
+   */
+  private class Slice implements Runnable {
+    private final BlockingQueue<Page> pages = new ArrayBlockingQueue<>(QUEUED_PAGES);
+    @NonNull
+    private final String pointInTimeId;
+    private final int id;
+
+    Slice(@NonNull String pointInTimeId, int id) {
+      this.pointInTimeId = pointInTimeId;
+      this.id = id;
+    }
+
+    @Override
+    public void run() {
+      Object[] searchAfter = null;
+      try {
+        boolean last = false;
+        while (!last && !closed) {
+          SearchResponse response = retriever.searchSlice(pointInTimeId, buildKey, nodeId, searchAfter, pageSize,
+                                                          id, slices
+                                                         );
+          SearchHit[] searchHits = response.getHits().getHits();
+          Page page = new Page(searchHits.length);
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+          for (SearchHit hit : searchHits) {
+            ConsoleNotes.write(w, hit.getSourceRef());
+            w.flush();
+            page.lines.add(out.toByteArray());
+            page.sortValues.add(hit.getSortValues());
+            out.reset();
+          }
+          last = searchHits.length < pageSize;
+          if (searchHits.length > 0) {
+            searchAfter = searchHits[searchHits.length - 1].getSortValues();
+          }
+          page.last = last;
+          pages.put(page);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        if (!closed) {
+          LOGGER.log(Level.WARNING, "failed to read the slice " + id + " of " + buildKey, e);
+        }
+        Page page = new Page(0);
+        page.error = e;
+        page.last = true;
+        try {
+          pages.put(page);
+        } catch (InterruptedException x) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    @NonNull
+    Page take() throws IOException {
+      try {
+        Page page = pages.take();
+        if (page.error != null) {
+          throw new IOException("failed to read the slice " + id, page.error);
+        }
+        return page;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+  }
+
+  /**
+   * Log lines of a page of a slice, rendered, with their sort values.
+   */
+  private static class Page {
+    private final List<byte[]> lines;
+    private final List<Object[]> sortValues;
+    private boolean last;
+    @CheckForNull
+    private Exception error;
+
+    Page(int size) {
+      this.lines = new ArrayList<>(size);
+      this.sortValues = new ArrayList<>(size);
+    }
+  }
+
+  /**
+   * Position of the reader in a slice.
+   */
+  private static class Cursor {
+    @NonNull
+    private final Slice slice;
+    @NonNull
+    private Page page = new Page(0);
+    private int index = -1;
+
+    Cursor(@NonNull Slice slice) {
+      this.slice = slice;
+    }
+
+    /**
+     * Moves to the next line of the slice, it waits for the next page if needed.
+     *
+     * @return false if there are no more lines.
+     */
+    boolean next() throws IOException {
+      index++;
+      while (index >= page.lines.size()) {
+        if (page.last) {
+          return false;
+        }
+        page = slice.take();
+        index = 0;
+      }
+      return true;
+    }
+  }
+}
@@ -12,6 +12,7 @@ import java.util.Optional;
 import javax.annotation.Nonnull;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.log.ElasticsearchClients;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpHost;
@@ -57,10 +58,13 @@ public class ElasticStackConfiguration extends AbstractElasticStackGlobalConfigu
   private String elasticsearchUrl;
   @CheckForNull
   private String credentialsId;
+  private int maxConnections = ElasticsearchClients.DEFAULT_MAX_CONNECTIONS;
+  private int keepAlive = ElasticsearchClients.DEFAULT_KEEP_ALIVE_SECONDS;
 
   @DataBoundConstructor
   public ElasticStackConfiguration() {
     load();
+    ElasticsearchClients.configure(getMaxConnections(), getKeepAlive());
   }
 
   /**
@@ -78,6 +82,8 @@ public class ElasticStackConfiguration extends AbstractElasticStackGlobalConfigu
   public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
     req.bindJSON(this, json);
     save();
+    // the shared clients are created again with the new URL, credentials, and connection settings
+    ElasticsearchClients.configure(getMaxConnections(), getKeepAlive());
     return true;
   }
 
@@ -133,6 +139,24 @@ public class ElasticStackConfiguration extends AbstractElasticStackGlobalConfigu
     this.elasticsearchUrl = Util.fixNull(elasticsearchUrl);
   }
 
+  public int getMaxConnections() {
+    return maxConnections > 0 ? maxConnections : ElasticsearchClients.DEFAULT_MAX_CONNECTIONS;
+  }
+
+  @DataBoundSetter
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  public int getKeepAlive() {
+    return keepAlive > 0 ? keepAlive : ElasticsearchClients.DEFAULT_KEEP_ALIVE_SECONDS;
+  }
+
+  @DataBoundSetter
+  public void setKeepAlive(int keepAlive) {
+    this.keepAlive = keepAlive;
+  }
+
   @RequirePOST
   public FormValidation doCheckKibanaUrl(@QueryParameter("kibanaUrl") String url) {
     if (StringUtils.isEmpty(url)) {
@@ -225,6 +249,7 @@ public class ElasticStackConfiguration extends AbstractElasticStackGlobalConfigu
   @Override
   public String toString() {
     return "ElasticStackConfiguration{" + "kibanaUrl='" + kibanaUrl + '\'' + ", elasticsearchUrl='" + elasticsearchUrl
-           + '\'' + ", credentialsId='" + credentialsId + '\'' + '}';
+           + '\'' + ", credentialsId='" + credentialsId + '\'' + ", maxConnections=" + maxConnections + ", keepAlive="
+           + keepAlive + '}';
   }
 }
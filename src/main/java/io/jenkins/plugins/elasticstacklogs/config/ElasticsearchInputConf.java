@@ -0,0 +1,218 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.config;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.input.ElasticsearchInput;
+import io.jenkins.plugins.elasticstacklogs.input.Input;
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+import hudson.Extension;
+import hudson.util.FormValidation;
+import hudson.util.Secret;
+import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+
+/**
+ * Configuration for the input that indexes the events directly in Elasticsearch.
+ * The URL and the credentials ID are taken from the {@link ElasticStackConfiguration} when the build starts.
+ * The secret is not stored with the build, the controller resolves the credentials ID of the build when it creates
+ * the listeners, and the agents receive the secret with them.
+ */
+public class ElasticsearchInputConf extends InputConf {
+  static final long serialVersionUID = 1L;
+  @NonNull
+  private String index;
+  private int bulkActions = ElasticsearchInput.DEFAULT_BULK_ACTIONS;
+  private int bulkSize = ElasticsearchInput.DEFAULT_BULK_SIZE_MB;
+  private int flushInterval = ElasticsearchInput.DEFAULT_FLUSH_INTERVAL_SECONDS;
+  private int concurrentRequests = ElasticsearchInput.DEFAULT_CONCURRENT_REQUESTS;
+  private int maxRetries = ElasticsearchInput.DEFAULT_MAX_RETRIES;
+  @CheckForNull
+  private String url;
+  @CheckForNull
+  private String credentialsId;
+  /**
+   * Username and password of the credentials ID, only set in the configuration of the listeners.
+   */
+  @CheckForNull
+  private String username;
+  @CheckForNull
+  private Secret password;
+
+  @DataBoundConstructor
+  public ElasticsearchInputConf(@NonNull String index) {
+    this.index = StringUtils.isNotBlank(index) ? index : ElasticsearchInput.DEFAULT_INDEX;
+  }
+
+  /**
+   * @return a copy of the configuration with the URL and the credentials ID of the {@link ElasticStackConfiguration}.
+   */
+  @NonNull
+  @Override
+  public InputConf forBuild() {
+    ElasticsearchInputConf conf = (ElasticsearchInputConf) SerializationUtils.clone(this);
+    ElasticStackConfiguration config = ElasticStackConfiguration.get();
+    conf.url = config.getElasticsearchUrl();
+    conf.credentialsId = config.getCredentialsId();
+    return conf;
+  }
+
+  /**
+   * @return a copy of the configuration with the username and password of the credentials ID of the build.
+   * @throws IOException if the credentials ID of the build does not exist.
+   */
+  @NonNull
+  @Override
+  public InputConf forListener() throws IOException {
+    if (StringUtils.isBlank(credentialsId)) {
+      return this;
+    }
+    UsernamePasswordCredentials credentials;
+    try {
+      credentials = ElasticStackConfiguration.get().getCredentials(credentialsId);
+    } catch (NoSuchElementException e) {
+      throw new IOException("The credentials " + credentialsId + " of the Elastic Stack settings do not exist.", e);
+    }
+    ElasticsearchInputConf conf = (ElasticsearchInputConf) SerializationUtils.clone(this);
+    conf.username = credentials.getUsername();
+    conf.password = credentials.getPassword();
+    return conf;
+  }
+
+  @Override
+  public Input get() throws IOException {
+    if (StringUtils.isBlank(url)) {
+      throw new IOException("The Elasticsearch URL is not configured in the Elastic Stack settings.");
+    }
+    if (StringUtils.isNotBlank(credentialsId) && username == null) {
+      throw new IOException("The credentials " + credentialsId + " are not resolved, the input must be created "
+                            + "from the configuration of a listener.");
+    }
+    return new ElasticsearchInput(url, username, password != null ? password.getPlainText() : null, index,
+                                  getBulkActions(), getBulkSize(), getFlushInterval(), getConcurrentRequests(),
+                                  getMaxRetries()
+    );
+  }
+
+  @NonNull
+  public String getIndex() {
+    return index;
+  }
+
+  public void setIndex(@NonNull String index) {
+    this.index = index;
+  }
+
+  public int getBulkActions() {
+    return bulkActions > 0 ? bulkActions : ElasticsearchInput.DEFAULT_BULK_ACTIONS;
+  }
+
+  @DataBoundSetter
+  public void setBulkActions(int bulkActions) {
+    this.bulkActions = bulkActions;
+  }
+
+  public int getBulkSize() {
+    return bulkSize > 0 ? bulkSize : ElasticsearchInput.DEFAULT_BULK_SIZE_MB;
+  }
+
+  @DataBoundSetter
+  public void setBulkSize(int bulkSize) {
+    this.bulkSize = bulkSize;
+  }
+
+  public int getFlushInterval() {
+    return flushInterval > 0 ? flushInterval : ElasticsearchInput.DEFAULT_FLUSH_INTERVAL_SECONDS;
+  }
+
+  @DataBoundSetter
+  public void setFlushInterval(int flushInterval) {
+    this.flushInterval = flushInterval;
+  }
+
+  public int getConcurrentRequests() {
+    return Math.max(concurrentRequests, 0);
+  }
+
+  @DataBoundSetter
+  public void setConcurrentRequests(int concurrentRequests) {
+    this.concurrentRequests = concurrentRequests;
+  }
+
+  public int getMaxRetries() {
+    return Math.max(maxRetries, 0);
+  }
+
+  @DataBoundSetter
+  public void setMaxRetries(int maxRetries) {
+    this.maxRetries = maxRetries;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ElasticsearchInputConf that = (ElasticsearchInputConf) o;
+
+    return new EqualsBuilder().appendSuper(super.equals(o))
+                              .append(index, that.index).append(getBulkActions(), that.getBulkActions())
+                              .append(getBulkSize(), that.getBulkSize())
+                              .append(getFlushInterval(), that.getFlushInterval())
+                              .append(getConcurrentRequests(), that.getConcurrentRequests())
+                              .append(getMaxRetries(), that.getMaxRetries()).append(url, that.url)
+                              .append(credentialsId, that.credentialsId).append(username, that.username)
+                              .append(password, that.password).isEquals();
+  }
+
+  @Override
+  public int hashCode() {
+    return new HashCodeBuilder(17, 37).appendSuper(super.hashCode())
+                                      .append(index).append(getBulkActions()).append(getBulkSize())
+                                      .append(getFlushInterval()).append(getConcurrentRequests())
+                                      .append(getMaxRetries()).append(url).append(credentialsId).append(username)
+                                      .toHashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "ElasticsearchInputConf{" + "index='" + index + '\'' + ", bulkActions=" + bulkActions + ", bulkSize="
+           + bulkSize + ", flushInterval=" + flushInterval + ", concurrentRequests=" + concurrentRequests
+           + ", maxRetries=" + maxRetries + ", url='" + url + '\'' + ", credentialsId='" + credentialsId + '\''
+           + ", username='" + username + '\'' + '}';
+  }
+
+  @Symbol("elasticsearchInput")
+  @Extension
+  public static class ElasticsearchInputDescriptor extends InputConfDescriptor {
+    @Override
+    public String getDisplayName() {
+      return "Elasticsearch bulk input";
+    }
+
+    @RequirePOST
+    public FormValidation doCheckIndex(@QueryParameter String value) {
+      if (StringUtils.isBlank(value)) {
+        return FormValidation.warning("The index is empty, " + ElasticsearchInput.DEFAULT_INDEX + " will be used.");
+      }
+      return FormValidation.ok();
+    }
+  }
+}
@@ -12,6 +12,7 @@ import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import hudson.Extension;
 
 /**
@@ -22,6 +23,11 @@ public class FileInputConf extends InputConf {
 
   @NonNull
   private String filePath;
+  /**
+   * Size in MB to roll the file, 0 disables the rolling.
+   */
+  private int maxSegmentSize;
+  private int maxSegments = FileInput.DEFAULT_MAX_SEGMENTS;
 
   @DataBoundConstructor
   public FileInputConf(@NonNull String filePath) {
@@ -30,7 +36,7 @@ public class FileInputConf extends InputConf {
 
   @Override
   public Input get() throws IOException {
-    return new FileInput(filePath);
+    return new FileInput(filePath, maxSegmentSize * 1024L * 1024L, maxSegments);
   }
 
   @NonNull
@@ -42,6 +48,24 @@ public class FileInputConf extends InputConf {
     this.filePath = filePath;
   }
 
+  public int getMaxSegmentSize() {
+    return maxSegmentSize;
+  }
+
+  @DataBoundSetter
+  public void setMaxSegmentSize(int maxSegmentSize) {
+    this.maxSegmentSize = maxSegmentSize;
+  }
+
+  public int getMaxSegments() {
+    return maxSegments;
+  }
+
+  @DataBoundSetter
+  public void setMaxSegments(int maxSegments) {
+    this.maxSegments = maxSegments;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -54,17 +78,21 @@ public class FileInputConf extends InputConf {
 
     FileInputConf that = (FileInputConf) o;
 
-    return new EqualsBuilder().append(filePath, that.filePath).isEquals();
+    return new EqualsBuilder().appendSuper(super.equals(o))
+                              .append(filePath, that.filePath).append(maxSegmentSize, that.maxSegmentSize)
+                              .append(maxSegments, that.maxSegments).isEquals();
   }
 
   @Override
   public int hashCode() {
-    return new HashCodeBuilder(17, 37).append(filePath).toHashCode();
+    return new HashCodeBuilder(17, 37).appendSuper(super.hashCode())
+                                      .append(filePath).append(maxSegmentSize).append(maxSegments).toHashCode();
   }
 
   @Override
   public String toString() {
-    return "FileInputConf{" + "filePath='" + filePath + '\'' + '}';
+    return "FileInputConf{" + "filePath='" + filePath + '\'' + ", maxSegmentSize=" + maxSegmentSize + ", maxSegments="
+           + maxSegments + '}';
   }
 
   @Symbol("fileInput")
@@ -5,9 +5,15 @@ import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import io.jenkins.plugins.elasticstacklogs.input.Input;
+import io.jenkins.plugins.elasticstacklogs.input.OverflowPolicy;
+import io.jenkins.plugins.elasticstacklogs.input.SpoolingInput;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 import hudson.model.Describable;
@@ -19,10 +25,110 @@ import jenkins.model.Jenkins;
  * Interface for configure inputs.
  */
 public abstract class InputConf implements Describable<InputConf>, Serializable {
+  private int asyncBufferSize;
+  @CheckForNull
+  private OverflowPolicy overflowPolicy;
+  private int spoolSize;
+  private int spoolReplayRate = SpoolingInput.DEFAULT_REPLAY_RATE;
 
   @NonNull
   public abstract Input get() throws IOException;
 
+  /**
+   * Returns the configuration used by a build, it is stored with the build info.
+   * The inputs that need settings only available on the controller keep a reference to them (e.g. a credentials ID).
+   *
+   * @return the configuration to use in the build.
+   */
+  @NonNull
+  public InputConf forBuild() {
+    return this;
+  }
+
+  /**
+   * Returns the configuration of the listeners of a build, it is called on the controller and the result is sent
+   * to the agents with the listeners, it is not stored with the build.
+   * The inputs that need secrets resolve them here from the references kept by {@link #forBuild()}.
+   *
+   * @return the configuration to create the input of the listeners.
+   * @throws IOException if it is not possible to resolve the secrets.
+   */
+  @NonNull
+  public InputConf forListener() throws IOException {
+    return this;
+  }
+
+  /**
+   * @return number of events buffered before they are written by a background thread,
+   * 0 writes the events on the build thread.
+   */
+  public int getAsyncBufferSize() {
+    return Math.max(asyncBufferSize, 0);
+  }
+
+  @DataBoundSetter
+  public void setAsyncBufferSize(int asyncBufferSize) {
+    this.asyncBufferSize = asyncBufferSize;
+  }
+
+  @NonNull
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy != null ? overflowPolicy : OverflowPolicy.BLOCK;
+  }
+
+  @DataBoundSetter
+  public void setOverflowPolicy(@CheckForNull OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  /**
+   * @return max size in MB of the on-disk spool that keeps the events when the input fails, 0 disables the spool.
+   */
+  public int getSpoolSize() {
+    return Math.max(spoolSize, 0);
+  }
+
+  @DataBoundSetter
+  public void setSpoolSize(int spoolSize) {
+    this.spoolSize = spoolSize;
+  }
+
+  /**
+   * @return max number of events per second replayed from the spool.
+   */
+  public int getSpoolReplayRate() {
+    return spoolReplayRate > 0 ? spoolReplayRate : SpoolingInput.DEFAULT_REPLAY_RATE;
+  }
+
+  @DataBoundSetter
+  public void setSpoolReplayRate(int spoolReplayRate) {
+    this.spoolReplayRate = spoolReplayRate;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    InputConf that = (InputConf) o;
+
+    return new EqualsBuilder().append(getAsyncBufferSize(), that.getAsyncBufferSize())
+                              .append(getOverflowPolicy(), that.getOverflowPolicy())
+                              .append(getSpoolSize(), that.getSpoolSize())
+                              .append(getSpoolReplayRate(), that.getSpoolReplayRate()).isEquals();
+  }
+
+  @Override
+  public int hashCode() {
+    return new HashCodeBuilder(17, 37).append(getAsyncBufferSize()).append(getOverflowPolicy()).append(getSpoolSize())
+                                      .append(getSpoolReplayRate()).toHashCode();
+  }
+
   @Override
   public InputConfDescriptor getDescriptor() {
     return (InputConfDescriptor) Jenkins.get().getDescriptorOrDie(getClass());
@@ -9,9 +9,11 @@ import java.util.NoSuchElementException;
 import javax.annotation.Nonnull;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.log.ElasticsearchClients;
 import io.jenkins.plugins.elasticstacklogs.log.Retriever;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.client.RestHighLevelClient;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -21,6 +23,7 @@ import org.kohsuke.stapler.interceptor.RequirePOST;
 import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
 
 /**
@@ -29,10 +32,14 @@ import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
 @Symbol("inputLogs")
 @Extension
 public class InputConfiguration extends AbstractElasticStackGlobalConfiguration {
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 100000;
   @CheckForNull
   private InputConf input;
   @CheckForNull
   private String indexPattern = "logs-*";
+  private int pageSize = Retriever.PAGE_SIZE;
+  private int cacheSize;
+  private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
 
   @DataBoundConstructor
   public InputConfiguration() {
@@ -54,6 +61,7 @@ public class InputConfiguration extends AbstractElasticStackGlobalConfiguration
   public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
     req.bindJSON(this, json);
     save();
+    InputRegistry.invalidate(input);
     return true;
   }
 
@@ -70,6 +78,7 @@ public class InputConfiguration extends AbstractElasticStackGlobalConfiguration
 
   public void setInput(@CheckForNull InputConf input) {
     this.input = input;
+    InputRegistry.invalidate(input);
   }
 
   @CheckForNull
@@ -82,6 +91,50 @@ public class InputConfiguration extends AbstractElasticStackGlobalConfiguration
     this.indexPattern = indexPattern;
   }
 
+  /**
+   * @return number of log lines requested to Elasticsearch on every page.
+   */
+  public int getPageSize() {
+    return pageSize > 0 ? Math.min(pageSize, Retriever.MAX_PAGE_SIZE) : Retriever.PAGE_SIZE;
+  }
+
+  @DataBoundSetter
+  public void setPageSize(int pageSize) {
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * @return max size in MB of the disk cache of the completed build logs, 0 if the cache is disabled.
+   */
+  public int getCacheSize() {
+    return Math.max(cacheSize, 0);
+  }
+
+  @DataBoundSetter
+  public void setCacheSize(int cacheSize) {
+    this.cacheSize = cacheSize;
+  }
+
+  /**
+   * @return number of log lines of a completed log from which it is read in parallel slices, 0 if it is disabled.
+   */
+  public int getParallelThreshold() {
+    return Math.max(parallelThreshold, 0);
+  }
+
+  @DataBoundSetter
+  public void setParallelThreshold(int parallelThreshold) {
+    this.parallelThreshold = parallelThreshold;
+  }
+
+  @RequirePOST
+  public FormValidation doCheckPageSize(@QueryParameter int value) {
+    if (value <= 0 || value > Retriever.MAX_PAGE_SIZE) {
+      return FormValidation.error("The page size must be between 1 and " + Retriever.MAX_PAGE_SIZE + ".");
+    }
+    return FormValidation.ok();
+  }
+
   @RequirePOST
   public FormValidation doCheckIndexPattern(@QueryParameter String indexPattern) {
     if (StringUtils.isEmpty(indexPattern)) {
@@ -94,6 +147,7 @@ public class InputConfiguration extends AbstractElasticStackGlobalConfiguration
   public FormValidation doValidate(
     @QueryParameter String credentialsId, @QueryParameter String elasticsearchUrl,
     @QueryParameter String indexPattern) {
+    Jenkins.get().checkPermission(Jenkins.ADMINISTER);
     FormValidation elasticsearchUrlValidation = ElasticStackConfiguration.get()
                                                                          .doCheckElasticsearchUrl(elasticsearchUrl);
     if (elasticsearchUrlValidation.kind != FormValidation.Kind.OK) {
@@ -102,11 +156,15 @@ public class InputConfiguration extends AbstractElasticStackGlobalConfiguration
 
     try {
       UsernamePasswordCredentials jenkinsCredentials = ElasticStackConfiguration.get().getCredentials(credentialsId);
-      Retriever retriever = new Retriever(elasticsearchUrl, jenkinsCredentials.getUsername(),
-                                          jenkinsCredentials.getPassword().getPlainText(), indexPattern
-      );
-      if (retriever.indexExists()) {
-        return FormValidation.ok("success");
+      String username = jenkinsCredentials.getUsername();
+      String password = jenkinsCredentials.getPassword().getPlainText();
+      // the credentials may not be saved yet, the shared client of the URL and username is left as is
+      try (RestHighLevelClient client = new RestHighLevelClient(
+        ElasticsearchClients.builder(elasticsearchUrl, username, password))) {
+        Retriever retriever = new Retriever(elasticsearchUrl, username, password, indexPattern, client);
+        if (retriever.indexExists()) {
+          return FormValidation.ok("success");
+        }
       }
     } catch (NoSuchElementException e) {
       return FormValidation.error("Invalid credentials.");
@@ -120,9 +178,52 @@ public class InputConfiguration extends AbstractElasticStackGlobalConfiguration
     return FormValidation.error("Index pattern not found.");
   }
 
+  /**
+   * Installs the component and index templates of the log indices that match the index pattern.
+   */
+  @RequirePOST
+  public FormValidation doInstallTemplate(
+    @QueryParameter String credentialsId, @QueryParameter String elasticsearchUrl,
+    @QueryParameter String indexPattern) {
+    Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+    if (StringUtils.isBlank(indexPattern)) {
+      return FormValidation.error("The index pattern is required.");
+    }
+    String patternError = Retriever.templatePatternError(indexPattern);
+    if (patternError != null) {
+      return FormValidation.error(patternError);
+    }
+    FormValidation elasticsearchUrlValidation = ElasticStackConfiguration.get()
+                                                                         .doCheckElasticsearchUrl(elasticsearchUrl);
+    if (elasticsearchUrlValidation.kind != FormValidation.Kind.OK) {
+      return elasticsearchUrlValidation;
+    }
+
+    try {
+      UsernamePasswordCredentials jenkinsCredentials = ElasticStackConfiguration.get().getCredentials(credentialsId);
+      String username = jenkinsCredentials.getUsername();
+      String password = jenkinsCredentials.getPassword().getPlainText();
+      try (RestHighLevelClient client = new RestHighLevelClient(
+        ElasticsearchClients.builder(elasticsearchUrl, username, password))) {
+        Retriever retriever = new Retriever(elasticsearchUrl, username, password, indexPattern, client);
+        retriever.putTemplates(indexPattern);
+        return FormValidation.ok("The index template " + Retriever.TEMPLATE_NAME + " is installed.");
+      }
+    } catch (NoSuchElementException e) {
+      return FormValidation.error("Invalid credentials.");
+    } catch (IllegalArgumentException e) {
+      return FormValidation.error(e, "Invalid Argument.");
+    } catch (IOException e) {
+      return FormValidation.error(e, "Unable to install the index template.");
+    } catch (Exception e) {
+      return FormValidation.error(e, e.getMessage());
+    }
+  }
+
   @Override
   public String toString() {
     return "InputConfiguration{" + ", input='" + (input != null ? input.getClass().getName() : "None") + '\''
-           + ", indexPattern='" + (indexPattern != null ? indexPattern : "None") + '\'' + '}';
+           + ", indexPattern='" + (indexPattern != null ? indexPattern : "None") + '\'' + ", pageSize=" + pageSize
+           + ", cacheSize=" + cacheSize + ", parallelThreshold=" + parallelThreshold + '}';
   }
 }
@@ -0,0 +1,303 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.config;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.input.AsyncInput;
+import io.jenkins.plugins.elasticstacklogs.input.Input;
+import io.jenkins.plugins.elasticstacklogs.input.SpoolingInput;
+import org.apache.commons.lang.StringUtils;
+import hudson.Util;
+import jenkins.model.Jenkins;
+import jenkins.util.JenkinsJVM;
+
+/**
+ * JVM-wide registry of the {@link Input}s, there is one shared {@link Input} per distinct {@link InputConf}
+ * on the controller and on each agent.
+ * The inputs are reference counted, when the configuration is saved the inputs of the other configurations
+ * are closed when the last stream that uses them releases them.
+ * The agents do not see the configuration saves, there the inputs not used for {@link #IDLE_TIMEOUT_MILLIS}
+ * are closed when other configuration is used.
+ * The inputs are created outside of the registry lock, a slow sink only blocks the streams of its configuration.
+ */
+public final class InputRegistry {
+  private static final Logger LOGGER = Logger.getLogger(InputRegistry.class.getName());
+  /**
+   * System property to change the directory of the spools, by default JENKINS_HOME on the controller
+   * and the temporary directory on the agents.
+   */
+  public static final String SPOOL_DIR_PROPERTY = InputRegistry.class.getName() + ".spoolDir";
+  /**
+   * Time an unused input is kept open while other configurations are used.
+   */
+  static final long IDLE_TIMEOUT_MILLIS = Long.getLong(InputRegistry.class.getName() + ".idleTimeoutMillis",
+                                                       10 * 60 * 1000L
+                                                      );
+  private static final Map<InputConf, Entry> ENTRIES = new HashMap<>();
+
+  private InputRegistry() {
+  }
+
+  /**
+   * Returns the shared input for the configuration, it is created if it does not exists.
+   * Every call must be paired with a call to {@link #release(InputConf)}.
+   * The builds started before a configuration change keep using the input of their configuration.
+   *
+   * @param conf input configuration.
+   * @return the shared input.
+   * @throws IOException if it is not possible to create the input.
+   */
+  @NonNull
+  public static Input acquire(@NonNull InputConf conf) throws IOException {
+    List<Input> toClose;
+    Entry entry;
+    boolean creator = false;
+    synchronized (ENTRIES) {
+      entry = ENTRIES.get(conf);
+      if (entry == null) {
+        entry = new Entry();
+        ENTRIES.put(conf, entry);
+        creator = true;
+      }
+      entry.references++;
+      toClose = removeIdle(conf);
+    }
+    closeAll(toClose);
+    if (creator) {
+      try {
+        entry.input.complete(create(conf));
+      } catch (IOException | RuntimeException e) {
+        synchronized (ENTRIES) {
+          ENTRIES.remove(conf, entry);
+        }
+        entry.input.completeExceptionally(e);
+        throw e;
+      }
+    }
+    try {
+      return entry.get();
+    } catch (InterruptedIOException e) {
+      release(conf, entry);
+      throw e;
+    }
+  }
+
+  /**
+   * Releases an input acquired with {@link #acquire(InputConf)}.
+   *
+   * @param conf input configuration.
+   */
+  public static void release(@NonNull InputConf conf) {
+    release(conf, null);
+  }
+
+  /**
+   * @param expected entry to release, null to release the current entry of the configuration.
+   */
+  private static void release(@NonNull InputConf conf, @CheckForNull Entry expected) {
+    Input toClose = null;
+    synchronized (ENTRIES) {
+      Entry entry = ENTRIES.get(conf);
+      if (entry == null || (expected != null && entry != expected)) {
+        return;
+      }
+      entry.references--;
+      if (entry.references <= 0) {
+        if (entry.stale) {
+          ENTRIES.remove(conf);
+          toClose = entry.getNow();
+        } else {
+          entry.idleSince = System.currentTimeMillis();
+        }
+      }
+    }
+    if (toClose != null) {
+      close(toClose);
+    }
+  }
+
+  /**
+   * Marks the inputs of other configurations as stale, the idle ones are closed
+   * and the ones in use are closed when they are released. It is called when the configuration is saved.
+   *
+   * @param current current input configuration.
+   */
+  public static void invalidate(@CheckForNull InputConf current) {
+    List<Input> toClose;
+    synchronized (ENTRIES) {
+      toClose = invalidateOthers(current);
+    }
+    closeAll(toClose);
+  }
+
+  /**
+   * @return number of inputs open on the JVM.
+   */
+  public static int size() {
+    synchronized (ENTRIES) {
+      return ENTRIES.size();
+    }
+  }
+
+  /**
+   * Creates the input, it is wrapped in a {@link SpoolingInput} if the configuration has a spool,
+   * and in an {@link AsyncInput} if the configuration has an async buffer.
+   */
+  @NonNull
+  private static Input create(@NonNull InputConf conf) throws IOException {
+    Input input = conf.get();
+    if (conf.getSpoolSize() > 0) {
+      input = spool(conf, input);
+    }
+    if (conf.getAsyncBufferSize() > 0) {
+      // the spill is next to the spool, it uses the spool size or a default size if the configuration has no spool
+      Path spoolDir = spoolDirectory(conf);
+      int spillSize = conf.getSpoolSize() > 0 ? conf.getSpoolSize() : AsyncInput.DEFAULT_SPILL_SIZE_MB;
+      input = new AsyncInput(input, conf.getAsyncBufferSize(), conf.getOverflowPolicy(),
+                             spoolDir.resolveSibling(spoolDir.getFileName() + "-spill"), spillSize * 1024L * 1024L
+      );
+    }
+    return input;
+  }
+
+  /**
+   * Opens the spool of the configuration.
+   */
+  @NonNull
+  private static Input spool(@NonNull InputConf conf, @NonNull Input input) throws IOException {
+    try {
+      return new SpoolingInput(input, spoolDirectory(conf), conf.getSpoolSize() * 1024L * 1024L,
+                               conf.getSpoolReplayRate()
+      );
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    }
+  }
+
+  /**
+   * The directory is named after a digest of the configuration, so the events left by a previous process
+   * are replayed by the same configuration.
+   */
+  @NonNull
+  private static Path spoolDirectory(@NonNull InputConf conf) {
+    return spoolBaseDirectory().resolve(conf.getClass().getSimpleName() + "-" + Util.getDigestOf(conf.toString()));
+  }
+
+  @NonNull
+  private static Path spoolBaseDirectory() {
+    String dir = System.getProperty(SPOOL_DIR_PROPERTY);
+    if (StringUtils.isNotBlank(dir)) {
+      return Paths.get(dir);
+    }
+    if (JenkinsJVM.isJenkinsJVM()) {
+      return Jenkins.get().getRootDir().toPath().resolve("elastic-stack-logs").resolve("spool");
+    }
+    return Paths.get(System.getProperty("java.io.tmpdir"), "elastic-stack-logs", "spool");
+  }
+
+  @NonNull
+  private static List<Input> invalidateOthers(@CheckForNull InputConf current) {
+    List<Input> toClose = new ArrayList<>();
+    Iterator<Map.Entry<InputConf, Entry>> it = ENTRIES.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<InputConf, Entry> item = it.next();
+      if (item.getKey().equals(current)) {
+        continue;
+      }
+      Entry entry = item.getValue();
+      entry.stale = true;
+      if (entry.references <= 0) {
+        it.remove();
+        toClose.add(entry.getNow());
+      }
+    }
+    return toClose;
+  }
+
+  /**
+   * Removes the inputs of other configurations not used for {@link #IDLE_TIMEOUT_MILLIS}.
+   *
+   * @param current configuration in use.
+   * @return the inputs to close.
+   */
+  @NonNull
+  private static List<Input> removeIdle(@NonNull InputConf current) {
+    List<Input> toClose = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<InputConf, Entry>> it = ENTRIES.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<InputConf, Entry> item = it.next();
+      Entry entry = item.getValue();
+      if (entry.references <= 0 && now - entry.idleSince >= IDLE_TIMEOUT_MILLIS && !item.getKey().equals(current)) {
+        it.remove();
+        toClose.add(entry.getNow());
+      }
+    }
+    return toClose;
+  }
+
+  private static void closeAll(@NonNull List<Input> inputs) {
+    for (Input input : inputs) {
+      close(input);
+    }
+  }
+
+  private static void close(@NonNull Input input) {
+    try {
+      input.close();
+      LOGGER.log(Level.FINE, "closed input {0}", input);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.log(Level.WARNING, "failed to close the input " + input, e);
+    }
+  }
+
+  /**
+   * A shared input and the number of streams that use it.
+   * The input is completed by the first stream that acquires it, the other streams wait for it.
+   * An entry is only closed without references, so its input is already created.
+   */
+  private static class Entry {
+    private final CompletableFuture<Input> input = new CompletableFuture<>();
+    private int references;
+    private boolean stale;
+    private long idleSince = System.currentTimeMillis();
+
+    @NonNull
+    Input get() throws IOException {
+      try {
+        return input.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted waiting for the input");
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+      }
+    }
+
+    @NonNull
+    Input getNow() {
+      return input.getNow(null);
+    }
+  }
+}
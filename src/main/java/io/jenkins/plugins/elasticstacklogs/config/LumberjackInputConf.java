@@ -0,0 +1,137 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.config;
+
+import java.io.IOException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.input.Input;
+import io.jenkins.plugins.elasticstacklogs.input.LumberjackInput;
+import io.jenkins.plugins.elasticstacklogs.input.OverflowPolicy;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import hudson.Extension;
+
+/**
+ * Configuration for the Beats (Lumberjack v2) input of Logstash.
+ */
+public class LumberjackInputConf extends InputConf {
+  static final long serialVersionUID = 1L;
+  private int port;
+  @NonNull
+  private String host;
+  private int windowSize = LumberjackInput.DEFAULT_WINDOW_SIZE;
+  private int compressionLevel = LumberjackInput.DEFAULT_COMPRESSION_LEVEL;
+
+  @DataBoundConstructor
+  public LumberjackInputConf(@NonNull String host, int port) {
+    this.port = port;
+    this.host = host;
+  }
+
+  @Override
+  public Input get() throws IOException {
+    return new LumberjackInput(host, port, getWindowSize(), getCompressionLevel());
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  @NonNull
+  public String getHost() {
+    return host;
+  }
+
+  public void setHost(@NonNull String host) {
+    this.host = host;
+  }
+
+  /**
+   * Logstash acknowledges every window before the next one is sent, so the events are always written by a background
+   * thread in batches, the build threads do not wait for the ACKs and the windows have many events.
+   *
+   * @return the async buffer size, {@link LumberjackInput#DEFAULT_ASYNC_BUFFER_SIZE} if it is not set.
+   */
+  @Override
+  public int getAsyncBufferSize() {
+    int asyncBufferSize = super.getAsyncBufferSize();
+    return asyncBufferSize > 0 ? asyncBufferSize : LumberjackInput.DEFAULT_ASYNC_BUFFER_SIZE;
+  }
+
+  /**
+   * @return the overflow policy of the async buffer, {@link OverflowPolicy#SPILL} if the async buffer size
+   * is not set, so the builds do not wait while Logstash is down.
+   */
+  @NonNull
+  @Override
+  public OverflowPolicy getOverflowPolicy() {
+    return super.getAsyncBufferSize() > 0 ? super.getOverflowPolicy() : OverflowPolicy.SPILL;
+  }
+
+  public int getWindowSize() {
+    return windowSize > 0 ? windowSize : LumberjackInput.DEFAULT_WINDOW_SIZE;
+  }
+
+  @DataBoundSetter
+  public void setWindowSize(int windowSize) {
+    this.windowSize = windowSize;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  @DataBoundSetter
+  public void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    LumberjackInputConf that = (LumberjackInputConf) o;
+
+    return new EqualsBuilder().appendSuper(super.equals(o))
+                              .append(port, that.port).append(host, that.host)
+                              .append(getWindowSize(), that.getWindowSize())
+                              .append(compressionLevel, that.compressionLevel).isEquals();
+  }
+
+  @Override
+  public int hashCode() {
+    return new HashCodeBuilder(17, 37).appendSuper(super.hashCode())
+                                      .append(port).append(host).append(getWindowSize()).append(compressionLevel)
+                                      .toHashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "LumberjackInputConf{" + "port=" + port + ", host='" + host + '\'' + ", windowSize=" + windowSize
+           + ", compressionLevel=" + compressionLevel + '}';
+  }
+
+  @Symbol("lumberjackInput")
+  @Extension
+  public static class LumberjackInputDescriptor extends InputConfDescriptor {
+    @Override
+    public String getDisplayName() {
+      return "Logstash beats (Lumberjack) input";
+    }
+  }
+}
@@ -53,12 +53,14 @@ public class OpentelemetryLogsInputConf extends InputConf {
 
     OpentelemetryLogsInputConf that = (OpentelemetryLogsInputConf) o;
 
-    return new EqualsBuilder().append(endpoint, that.endpoint).isEquals();
+    return new EqualsBuilder().appendSuper(super.equals(o))
+                              .append(endpoint, that.endpoint).isEquals();
   }
 
   @Override
   public int hashCode() {
-    return new HashCodeBuilder(17, 37).append(endpoint).toHashCode();
+    return new HashCodeBuilder(17, 37).appendSuper(super.hashCode())
+                                      .append(endpoint).toHashCode();
   }
 
   @Override
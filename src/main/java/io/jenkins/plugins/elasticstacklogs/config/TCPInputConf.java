@@ -12,6 +12,7 @@ import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import hudson.Extension;
 
 /**
@@ -22,6 +23,7 @@ public class TCPInputConf extends InputConf {
   private int port;
   @NonNull
   private String host;
+  private int poolSize = TCPInput.DEFAULT_POOL_SIZE;
 
   @DataBoundConstructor
   public TCPInputConf(@NonNull String host, int port) {
@@ -31,7 +33,7 @@ public class TCPInputConf extends InputConf {
 
   @Override
   public Input get() throws IOException {
-    return new TCPInput(host, port);
+    return new TCPInput(host, port, poolSize);
   }
 
   public int getPort() {
@@ -42,6 +44,15 @@ public class TCPInputConf extends InputConf {
     this.port = port;
   }
 
+  public int getPoolSize() {
+    return poolSize > 0 ? poolSize : TCPInput.DEFAULT_POOL_SIZE;
+  }
+
+  @DataBoundSetter
+  public void setPoolSize(int poolSize) {
+    this.poolSize = poolSize;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -54,17 +65,20 @@ public class TCPInputConf extends InputConf {
 
     TCPInputConf that = (TCPInputConf) o;
 
-    return new EqualsBuilder().append(port, that.port).append(host, that.host).isEquals();
+    return new EqualsBuilder().appendSuper(super.equals(o))
+                              .append(port, that.port).append(host, that.host)
+                              .append(getPoolSize(), that.getPoolSize()).isEquals();
   }
 
   @Override
   public int hashCode() {
-    return new HashCodeBuilder(17, 37).append(port).append(host).toHashCode();
+    return new HashCodeBuilder(17, 37).appendSuper(super.hashCode())
+                                      .append(port).append(host).append(getPoolSize()).toHashCode();
   }
 
   @Override
   public String toString() {
-    return "TCPInputConf{" + "port=" + port + ", host='" + host + '\'' + '}';
+    return "TCPInputConf{" + "port=" + port + ", host='" + host + '\'' + ", poolSize=" + poolSize + '}';
   }
 
   @Symbol("tcpInput")
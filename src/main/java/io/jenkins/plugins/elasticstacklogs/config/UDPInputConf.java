@@ -12,6 +12,7 @@ import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import hudson.Extension;
 
 /**
@@ -22,6 +23,7 @@ public class UDPInputConf extends InputConf {
   private int port;
   @NonNull
   private String host;
+  private int maxPayloadSize;
 
   @DataBoundConstructor
   public UDPInputConf(@NonNull String host, int port) {
@@ -31,7 +33,7 @@ public class UDPInputConf extends InputConf {
 
   @Override
   public Input get() throws IOException {
-    return new UDPInput(host, port);
+    return new UDPInput(host, port, maxPayloadSize);
   }
 
   public int getPort() {
@@ -42,6 +44,15 @@ public class UDPInputConf extends InputConf {
     this.port = port;
   }
 
+  public int getMaxPayloadSize() {
+    return maxPayloadSize;
+  }
+
+  @DataBoundSetter
+  public void setMaxPayloadSize(int maxPayloadSize) {
+    this.maxPayloadSize = maxPayloadSize;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -54,17 +65,20 @@ public class UDPInputConf extends InputConf {
 
     UDPInputConf that = (UDPInputConf) o;
 
-    return new EqualsBuilder().append(port, that.port).append(host, that.host).isEquals();
+    return new EqualsBuilder().appendSuper(super.equals(o))
+                              .append(port, that.port).append(host, that.host)
+                              .append(maxPayloadSize, that.maxPayloadSize).isEquals();
   }
 
   @Override
   public int hashCode() {
-    return new HashCodeBuilder(17, 37).append(port).append(host).toHashCode();
+    return new HashCodeBuilder(17, 37).appendSuper(super.hashCode())
+                                      .append(port).append(host).append(maxPayloadSize).toHashCode();
   }
 
   @Override
   public String toString() {
-    return "UDPInputConf{" + "port=" + port + ", host='" + host + '\'' + '}';
+    return "UDPInputConf{" + "port=" + port + ", host='" + host + '\'' + ", maxPayloadSize=" + maxPayloadSize + '}';
   }
 
   @Symbol("udpInput")
@@ -0,0 +1,390 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Input that hands the events over to a background thread through a {@link RingBuffer}.
+ * The build threads only enqueue the events, a drainer thread takes them in batches and writes them
+ * to the delegated input, so a slow sink does not slow down the build steps.
+ * When the buffer is full the {@link OverflowPolicy} decides what to do with the new events.
+ * The events are kept as UTF-8 bytes and written to the delegated input in one buffer per batch,
+ * every event must end with a new line.
+ */
+public class AsyncInput extends Input {
+  private static final Logger LOGGER = Logger.getLogger(AsyncInput.class.getName());
+  public static final int BATCH_SIZE = 512;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  /**
+   * Max size in MB of the spill when the configuration has no spool size.
+   */
+  public static final int DEFAULT_SPILL_SIZE_MB = 100;
+
+  @NonNull
+  private final Input delegate;
+  @NonNull
+  private final OverflowPolicy overflowPolicy;
+  @CheckForNull
+  private final Path spillDirectory;
+  private final long maxSpillSize;
+  private final RingBuffer<byte[]> buffer;
+  /**
+   * Buffer of the drainer to write a batch of events in one call, it grows with the batches.
+   */
+  private ByteBuffer batchBuffer = ByteBuffer.allocate(64 * 1024);
+  private final Thread drainer;
+  private final Object spillLock = new Object();
+  @CheckForNull
+  private Spool spool;
+  private volatile boolean spilling;
+  private volatile boolean running = true;
+  private volatile boolean stopped;
+  private volatile boolean parked;
+
+  private final AtomicLong enqueued = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong spilled = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  /**
+   * @param delegate       input to write the events.
+   * @param bufferSize     number of events the buffer can hold, it is rounded up to a power of two.
+   * @param overflowPolicy what to do when the buffer is full.
+   * @param spillDirectory directory of the spill of the {@link OverflowPolicy#SPILL} policy, the events left
+   *                       by a previous process are sent first. It is deleted once the spill is drained and the
+   *                       input is closed.
+   * @param maxSpillSize   max size in bytes of the spill, the oldest events are discarded above it.
+   */
+  public AsyncInput(@NonNull Input delegate, int bufferSize, @NonNull OverflowPolicy overflowPolicy,
+                    @CheckForNull Path spillDirectory, long maxSpillSize) {
+    this.delegate = delegate;
+    this.overflowPolicy = overflowPolicy;
+    this.spillDirectory = spillDirectory;
+    this.maxSpillSize = maxSpillSize;
+    this.buffer = new RingBuffer<>(bufferSize);
+    if (overflowPolicy == OverflowPolicy.SPILL && spillDirectory != null && Files.isDirectory(spillDirectory)) {
+      recoverSpill();
+    }
+    this.drainer = new Thread(this::drain, "Elastic Stack logs async input");
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+  }
+
+  @Override
+  public boolean write(@NonNull String value) throws IOException {
+    return enqueue(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Copies every encoded event in the buffer, the events are not decoded.
+   */
+  @Override
+  public boolean write(@NonNull ByteBuffer events) throws IOException {
+    boolean ret = true;
+    int start = events.position();
+    int limit = events.limit();
+    for (int i = start; i < limit; i++) {
+      if (events.get(i) == '\n' || i == limit - 1) {
+        byte[] event = new byte[i + 1 - start];
+        events.get(event);
+        ret &= enqueue(event);
+        start = i + 1;
+      }
+    }
+    return ret;
+  }
+
+  private boolean enqueue(@NonNull byte[] value) throws IOException {
+    if (!running) {
+      return false;
+    }
+    if (spilling && spill(value)) {
+      return true;
+    }
+    while (!buffer.offer(value)) {
+      switch (overflowPolicy) {
+        case DROP_OLDEST:
+          if (buffer.poll() != null) {
+            dropped.incrementAndGet();
+          }
+          break;
+        case SPILL:
+          synchronized (spillLock) {
+            spilling = true;
+          }
+          if (spill(value)) {
+            return true;
+          }
+          break;
+        case BLOCK:
+        default:
+          wakeUp();
+          LockSupport.parkNanos(this, FULL_PARK_NANOS);
+          if (!running) {
+            return false;
+          }
+      }
+    }
+    enqueued.incrementAndGet();
+    wakeUp();
+    return true;
+  }
+
+  /**
+   * Waits until the drainer has written the buffered events and flushes the delegated input.
+   *
+   * @throws IOException if it is not possible to flush the delegated input.
+   */
+  @Override
+  public void flush() throws IOException {
+    long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+    while ((!buffer.isEmpty() || spilling) && drainer.isAlive() && System.currentTimeMillis() < deadline) {
+      LockSupport.unpark(drainer);
+      LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+    }
+    delegate.flush();
+  }
+
+  /**
+   * Stops accepting events, waits for the pending events to be written and closes the delegated input.
+   *
+   * @throws IOException if it is not possible to close the delegated input.
+   */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    LockSupport.unpark(drainer);
+    try {
+      drainer.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    stopped = true;
+    LockSupport.unpark(drainer);
+    LOGGER.log(Level.FINE, "closing {0}", this);
+    try {
+      synchronized (spillLock) {
+        closeSpool();
+      }
+    } finally {
+      delegate.close();
+    }
+  }
+
+  public long getEnqueued() {
+    return enqueued.get();
+  }
+
+  public long getWritten() {
+    return written.get();
+  }
+
+  /**
+   * @return events discarded by the {@link OverflowPolicy#DROP_OLDEST} policy.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * @return events written to disk by the {@link OverflowPolicy#SPILL} policy.
+   */
+  public long getSpilled() {
+    return spilled.get();
+  }
+
+  /**
+   * @return events the delegated input failed to write.
+   */
+  public long getFailed() {
+    return failed.get();
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncInput{" + "delegate=" + delegate + ", overflowPolicy=" + overflowPolicy + ", capacity="
+      + buffer.capacity() + ", enqueued=" + enqueued + ", written=" + written + ", dropped=" + dropped + ", spilled="
+      + spilled + ", failed=" + failed + '}';
+  }
+
+  /**
+   * Writes the event in the spool while the spool is not drained, so the events keep their order.
+   *
+   * @return false if the spool was drained and the event must go to the buffer.
+   */
+  private boolean spill(@NonNull byte[] value) throws IOException {
+    synchronized (spillLock) {
+      if (!spilling) {
+        return false;
+      }
+      if (spool == null) {
+        spool = openSpool();
+      }
+      spool.append(value);
+    }
+    spilled.incrementAndGet();
+    wakeUp();
+    return true;
+  }
+
+  @NonNull
+  private Spool openSpool() throws IOException {
+    if (spillDirectory == null) {
+      throw new IOException("there is no spill directory");
+    }
+    return Spool.open(spillDirectory, Math.min(Spool.MAX_SEGMENT_SIZE, Math.max(maxSpillSize / 4, 1)), maxSpillSize);
+  }
+
+  /**
+   * Opens the spill left by a previous process, its events are sent before the new ones.
+   */
+  private void recoverSpill() {
+    try {
+      spool = openSpool();
+      spilling = !spool.isEmpty();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "failed to open the spill " + spillDirectory, e);
+    }
+  }
+
+  /**
+   * Deletes the spill if it is drained, the events not sent are kept for the next process.
+   */
+  private void closeSpool() {
+    if (spool == null) {
+      return;
+    }
+    try {
+      if (spool.isEmpty()) {
+        spool.delete();
+      } else {
+        LOGGER.log(Level.WARNING, "{0} bytes of events are kept in the spill {1}",
+                   new Object[] { spool.size(), spillDirectory });
+        spool.close();
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "failed to close the spill", e);
+    }
+    spool = null;
+  }
+
+  private void wakeUp() {
+    if (parked) {
+      LockSupport.unpark(drainer);
+    }
+  }
+
+  private void drain() {
+    List<byte[]> batch = new ArrayList<>(BATCH_SIZE);
+    List<String> replayed = new ArrayList<>(BATCH_SIZE);
+    while (!stopped && (running || !buffer.isEmpty() || spilling)) {
+      batch.clear();
+      if (buffer.drainTo(batch, BATCH_SIZE) > 0) {
+        deliver(batch);
+        continue;
+      }
+      replayed.clear();
+      if (spilling && replay(replayed)) {
+        continue;
+      }
+      parked = true;
+      if (running && buffer.isEmpty()) {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+      }
+      parked = false;
+    }
+  }
+
+  /**
+   * Writes the oldest events of the spool, once it is empty the events go to the buffer again.
+   *
+   * @return true if some events were written.
+   */
+  private boolean replay(@NonNull List<String> batch) {
+    try {
+      Spool current;
+      synchronized (spillLock) {
+        current = spool;
+        if (current == null || current.isEmpty()) {
+          spilling = false;
+          return false;
+        }
+      }
+      batch.addAll(current.read(BATCH_SIZE));
+      deliverSpilled(batch);
+      current.commit(batch.size());
+      return true;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "failed to read the spool, the spilled events are discarded", e);
+      synchronized (spillLock) {
+        spilling = false;
+        closeSpool();
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Writes the events of the buffer in one call, they are copied in the buffer of the drainer.
+   */
+  private void deliver(@NonNull List<byte[]> events) {
+    int size = 0;
+    for (byte[] event : events) {
+      size += event.length;
+    }
+    if (batchBuffer.capacity() < size) {
+      batchBuffer = ByteBuffer.allocate(Math.max(size, batchBuffer.capacity() * 2));
+    }
+    batchBuffer.clear();
+    for (byte[] event : events) {
+      batchBuffer.put(event);
+    }
+    batchBuffer.flip();
+    int count = events.size();
+    try {
+      if (delegate.write(batchBuffer)) {
+        written.addAndGet(count);
+      } else {
+        failed.addAndGet(count);
+      }
+    } catch (IOException | RuntimeException e) {
+      failed.addAndGet(count);
+      LOGGER.log(Level.FINE, "failed to send " + count + " messages", e);
+    }
+  }
+
+  /**
+   * Writes the events read from the spill in one call.
+   */
+  private void deliverSpilled(@NonNull List<String> events) {
+    try {
+      if (delegate.write(events)) {
+        written.addAndGet(events.size());
+      } else {
+        failed.addAndGet(events.size());
+      }
+    } catch (IOException | RuntimeException e) {
+      failed.addAndGet(events.size());
+      LOGGER.log(Level.FINE, "failed to send " + events.size() + " messages", e);
+    }
+  }
+}
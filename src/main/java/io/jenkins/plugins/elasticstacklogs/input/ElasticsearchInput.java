@@ -0,0 +1,217 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.xcontent.XContentType;
+
+/**
+ * This input indexes the events directly in Elasticsearch with the _bulk API.
+ * The events are grouped by a {@link BulkProcessor} that sends a bulk request when it reaches a number of events,
+ * a size, or a time interval. The items rejected by Elasticsearch because it is overloaded are retried
+ * with an exponential backoff.
+ */
+public class ElasticsearchInput extends Input {
+  private static final Logger LOGGER = Logger.getLogger(ElasticsearchInput.class.getName());
+  public static final String DEFAULT_INDEX = "logs-jenkins-default";
+  public static final int DEFAULT_BULK_ACTIONS = 1000;
+  public static final int DEFAULT_BULK_SIZE_MB = 5;
+  public static final int DEFAULT_FLUSH_INTERVAL_SECONDS = 1;
+  public static final int DEFAULT_CONCURRENT_REQUESTS = 1;
+  public static final int DEFAULT_MAX_RETRIES = 3;
+  public static final long RETRY_DELAY_MILLIS = 100;
+  public static final int CLOSE_TIMEOUT_SECONDS = 30;
+
+  @NonNull
+  private final String index;
+  private final RestHighLevelClient client;
+  private final BulkProcessor bulkProcessor;
+  private final AtomicLong indexed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  /**
+   * @param url                Elasticsearch URL.
+   * @param username           username to access Elasticsearch, null to not authenticate.
+   * @param password           password to access Elasticsearch.
+   * @param index              index or data stream to write the events.
+   * @param bulkActions        number of events to send a bulk request.
+   * @param bulkSizeMb         size in MB to send a bulk request.
+   * @param flushIntervalSecs  seconds to send a bulk request with the pending events.
+   * @param concurrentRequests bulk requests in flight at the same time, 0 sends them on the caller thread.
+   * @param maxRetries         number of retries of the rejected events.
+   */
+  public ElasticsearchInput(@NonNull String url, @CheckForNull String username, @CheckForNull String password,
+                            @NonNull String index, int bulkActions, int bulkSizeMb, int flushIntervalSecs,
+                            int concurrentRequests, int maxRetries) {
+    this.index = index;
+    RestClientBuilder builder = RestClient.builder(HttpHost.create(url));
+    if (StringUtils.isNotBlank(username)) {
+      BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+      credentialsProvider.setCredentials(AuthScope.ANY,
+                                         new org.apache.http.auth.UsernamePasswordCredentials(username, password)
+                                        );
+      builder.setHttpClientConfigCallback(
+        httpClientBuilder -> httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider));
+    }
+    this.client = new RestHighLevelClient(builder);
+    this.bulkProcessor = BulkProcessor.builder(
+                                        (request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener),
+                                        new Listener(), "elastic-stack-logs-bulk"
+                                      )
+                                      .setBulkActions(bulkActions)
+                                      .setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+                                      .setFlushInterval(TimeValue.timeValueSeconds(flushIntervalSecs))
+                                      .setConcurrentRequests(Math.max(concurrentRequests, 0))
+                                      .setBackoffPolicy(BackoffPolicy.exponentialBackoff(
+                                        TimeValue.timeValueMillis(RETRY_DELAY_MILLIS), Math.max(maxRetries, 0)))
+                                      .build();
+  }
+
+  @Override
+  public boolean write(@NonNull String value) throws IOException {
+    bulkProcessor.add(newRequest().source(StringUtils.chomp(value), XContentType.JSON));
+    return true;
+  }
+
+  @Override
+  public boolean write(@NonNull List<String> values) throws IOException {
+    for (String value : values) {
+      write(value);
+    }
+    return true;
+  }
+
+  /**
+   * Adds every encoded event to the bulk request without decoding it to a String.
+   */
+  @Override
+  public boolean write(@NonNull ByteBuffer events) throws IOException {
+    for (ByteBuffer event : slice(events)) {
+      int length = event.remaining();
+      if (length > 0 && event.get(event.limit() - 1) == '\n') {
+        length--;
+      }
+      if (length == 0) {
+        continue;
+      }
+      // the request keeps the bytes until the bulk is sent, so they are copied out of the caller's buffer
+      byte[] source = new byte[length];
+      event.get(source, 0, length);
+      bulkProcessor.add(newRequest().source(source, XContentType.JSON));
+    }
+    return true;
+  }
+
+  /**
+   * Sends a bulk request with the pending events.
+   */
+  @Override
+  public void flush() throws IOException {
+    bulkProcessor.flush();
+  }
+
+  /**
+   * Sends the pending events, waits for the bulk requests in flight, and closes the client.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (!bulkProcessor.awaitClose(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOGGER.log(Level.WARNING, "timeout waiting for the bulk requests to {0}", index);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      client.close();
+    }
+  }
+
+  /**
+   * @return events indexed in Elasticsearch.
+   */
+  public long getIndexed() {
+    return indexed.get();
+  }
+
+  /**
+   * @return events Elasticsearch failed to index after the retries.
+   */
+  public long getFailed() {
+    return failed.get();
+  }
+
+  @Override
+  public String toString() {
+    return "ElasticsearchInput{" + "index='" + index + '\'' + ", indexed=" + indexed + ", failed=" + failed + '}';
+  }
+
+  @NonNull
+  private IndexRequest newRequest() {
+    return new IndexRequest(index).opType(DocWriteRequest.OpType.CREATE);
+  }
+
+  /**
+   * Counts the indexed and failed events of every bulk request.
+   */
+  private class Listener implements BulkProcessor.Listener {
+    @Override
+    public void beforeBulk(long executionId, BulkRequest request) {
+      LOGGER.log(Level.FINER, "sending bulk request {0} with {1} events",
+                 new Object[] { executionId, request.numberOfActions() }
+                );
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+      if (!response.hasFailures()) {
+        indexed.addAndGet(request.numberOfActions());
+        return;
+      }
+      int failures = 0;
+      for (BulkItemResponse item : response.getItems()) {
+        if (item.isFailed()) {
+          failures++;
+        }
+      }
+      indexed.addAndGet(request.numberOfActions() - failures);
+      failed.addAndGet(failures);
+      LOGGER.log(Level.WARNING, "failed to index {0} events in {1}: {2}",
+                 new Object[] { failures, index, response.buildFailureMessage() }
+                );
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+      failed.addAndGet(request.numberOfActions());
+      LOGGER.log(Level.WARNING, "failed to send a bulk request to " + index, failure);
+    }
+  }
+}
@@ -5,27 +5,80 @@
 package io.jenkins.plugins.elasticstacklogs.input;
 
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import org.apache.commons.io.FileUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 /**
  * Implementation for the log input of filebeat.
+ * The events are buffered and appended to the file by a shared writer per file, see {@link FileSegmentWriter}.
  */
 public class FileInput extends Input {
+  public static final int DEFAULT_MAX_SEGMENTS = 5;
 
   @NonNull
-  private final String filePath;
+  private final FileSegmentWriter writer;
+  private final AtomicBoolean closed = new AtomicBoolean();
 
   @DataBoundConstructor
   public FileInput(@NonNull String filePath) {
-    this.filePath = filePath;
+    this(filePath, 0, DEFAULT_MAX_SEGMENTS);
+  }
+
+  /**
+   * @param filePath       file to write the events.
+   * @param maxSegmentSize size in bytes to roll the file, 0 disables the rolling.
+   * @param maxSegments    number of rolled segments to keep.
+   */
+  public FileInput(@NonNull String filePath, long maxSegmentSize, int maxSegments) {
+    this.writer = FileSegmentWriter.acquire(filePath, Math.max(maxSegmentSize, 0), Math.max(maxSegments, 0));
   }
 
   @Override
   public boolean write(@NonNull String value) throws IOException {
-    FileUtils.writeStringToFile(Paths.get(filePath).toFile(), value, "UTF-8", true);
+    writer.write(value.getBytes(StandardCharsets.UTF_8));
+    return true;
+  }
+
+  @Override
+  public boolean write(@NonNull List<String> values) throws IOException {
+    for (String value : values) {
+      writer.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+    return true;
+  }
+
+  /**
+   * Appends the encoded events to the buffer of the file in one operation.
+   */
+  @Override
+  public boolean write(@NonNull ByteBuffer events) throws IOException {
+    writer.write(events);
     return true;
   }
+
+  /**
+   * Writes the buffered events in the file.
+   */
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  /**
+   * Writes the buffered events and releases the shared writer, it is closed if no other input uses it.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed.compareAndSet(false, true)) {
+      try {
+        writer.flush();
+      } finally {
+        FileSegmentWriter.release(writer);
+      }
+    }
+  }
 }
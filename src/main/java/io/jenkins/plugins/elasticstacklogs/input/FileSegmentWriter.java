@@ -0,0 +1,309 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Appends events to a file through an open {@link FileChannel}.
+ * The events are buffered in a direct buffer that is written when it is full
+ * or every {@link #FLUSH_INTERVAL_MILLIS}, whatever happens first.
+ * When the file reaches the max segment size, it is renamed to {@code file.1}
+ * (the previous segments are shifted to {@code file.2}, {@code file.3}, ...)
+ * and a new file is created, the segments over the max number of segments are deleted.
+ * There is one writer per file in the JVM, the buffered events of every writer are written when the JVM exits.
+ * The file is reopened when it is deleted or moved by other process, it is checked every
+ * {@link #FLUSH_INTERVAL_MILLIS} by the flusher, not on every write.
+ * The writers are reference counted, a writer is closed when the last input that uses it releases it.
+ */
+class FileSegmentWriter {
+  private static final Logger LOGGER = Logger.getLogger(FileSegmentWriter.class.getName());
+  private static final Map<Path, FileSegmentWriter> WRITERS = new HashMap<>();
+  static final int BUFFER_SIZE = 64 * 1024;
+  static final long FLUSH_INTERVAL_MILLIS = 1000;
+  @CheckForNull
+  private static ScheduledExecutorService flusher;
+
+  @NonNull
+  private final Path path;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private long maxSegmentSize;
+  private int maxSegments;
+  @CheckForNull
+  private FileChannel channel;
+  private long size;
+  private long lastFlush = System.currentTimeMillis();
+  private int references;
+
+  FileSegmentWriter(@NonNull Path path, long maxSegmentSize, int maxSegments) {
+    this.path = path;
+    this.maxSegmentSize = maxSegmentSize;
+    this.maxSegments = maxSegments;
+  }
+
+  /**
+   * @param filePath       file to write.
+   * @param maxSegmentSize size in bytes to roll the file, 0 disables the rolling.
+   * @param maxSegments    number of rolled segments to keep.
+   * @return the shared writer for the file, it is created if it does not exists.
+   * Every call must be paired with a call to {@link #release(FileSegmentWriter)}.
+   */
+  @NonNull
+  static FileSegmentWriter acquire(@NonNull String filePath, long maxSegmentSize, int maxSegments) {
+    FileSegmentWriter writer;
+    synchronized (WRITERS) {
+      writer = WRITERS.computeIfAbsent(Paths.get(filePath).toAbsolutePath(), p -> {
+        scheduleFlusher();
+        return new FileSegmentWriter(p, maxSegmentSize, maxSegments);
+      });
+      writer.references++;
+    }
+    writer.configure(maxSegmentSize, maxSegments);
+    return writer;
+  }
+
+  /**
+   * Releases a writer acquired with {@link #acquire(String, long, int)}, it is flushed and closed if no other input
+   * uses it.
+   *
+   * @param writer writer to release.
+   * @throws IOException if it is not possible to write in the file.
+   */
+  static void release(@NonNull FileSegmentWriter writer) throws IOException {
+    synchronized (WRITERS) {
+      writer.references--;
+      if (writer.references > 0) {
+        return;
+      }
+      WRITERS.remove(writer.path, writer);
+    }
+    writer.close();
+  }
+
+  @NonNull
+  private static List<FileSegmentWriter> writers() {
+    synchronized (WRITERS) {
+      return new ArrayList<>(WRITERS.values());
+    }
+  }
+
+  private static synchronized void scheduleFlusher() {
+    if (flusher == null) {
+      flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Elastic Stack logs file flusher");
+        thread.setDaemon(true);
+        return thread;
+      });
+      flusher.scheduleWithFixedDelay(() -> flushAll(false), FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                                     TimeUnit.MILLISECONDS
+                                    );
+      // the flusher is a daemon thread, the events of the last interval are written before the JVM exits
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> flushAll(true), "Elastic Stack logs file flusher shutdown"));
+    }
+  }
+
+  /**
+   * @param force true to write the buffers now, false to write the buffers whose flush interval has expired
+   *              and reopen the files deleted or moved.
+   */
+  private static void flushAll(boolean force) {
+    for (FileSegmentWriter writer : writers()) {
+      try {
+        if (force) {
+          writer.flush();
+        } else {
+          writer.flushIfExpired();
+          writer.reopenIfMoved();
+        }
+      } catch (IOException | RuntimeException e) {
+        LOGGER.log(Level.WARNING, "failed to flush " + writer.path, e);
+      }
+    }
+  }
+
+  /**
+   * Flushes and closes all the writers of the JVM.
+   */
+  static void closeAll() {
+    List<FileSegmentWriter> writers;
+    synchronized (WRITERS) {
+      writers = new ArrayList<>(WRITERS.values());
+      WRITERS.clear();
+    }
+    for (FileSegmentWriter writer : writers) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.FINE, "failed to close " + writer.path, e);
+      }
+    }
+  }
+
+  private synchronized void configure(long maxSegmentSize, int maxSegments) {
+    this.maxSegmentSize = maxSegmentSize;
+    this.maxSegments = maxSegments;
+  }
+
+  /**
+   * Appends an event to the buffer, the buffer is written if it is full or the flush interval has expired.
+   *
+   * @param event bytes of the event.
+   * @throws IOException if it is not possible to write in the file.
+   */
+  synchronized void write(@NonNull byte[] event) throws IOException {
+    write(ByteBuffer.wrap(event));
+  }
+
+  /**
+   * Appends several events to the buffer, the events are written directly in the file if they do not fit in the buffer.
+   *
+   * @param events bytes of the events, every event must end with a new line.
+   * @throws IOException if it is not possible to write in the file.
+   */
+  synchronized void write(@NonNull ByteBuffer events) throws IOException {
+    if (events.remaining() > buffer.remaining()) {
+      flush();
+    }
+    if (events.remaining() > buffer.capacity()) {
+      writeToChannel(events);
+    } else {
+      buffer.put(events);
+    }
+    flushIfExpired();
+  }
+
+  /**
+   * Writes the buffered events in the file.
+   *
+   * @throws IOException if it is not possible to write in the file.
+   */
+  synchronized void flush() throws IOException {
+    if (buffer.position() > 0) {
+      buffer.flip();
+      try {
+        writeToChannel(buffer);
+      } finally {
+        buffer.clear();
+      }
+    }
+    lastFlush = System.currentTimeMillis();
+  }
+
+  /**
+   * Flushes the buffered events and closes the file.
+   *
+   * @throws IOException if it is not possible to write in the file.
+   */
+  synchronized void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      closeChannel();
+    }
+  }
+
+  private synchronized void flushIfExpired() throws IOException {
+    if (System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MILLIS) {
+      flush();
+    }
+  }
+
+  /**
+   * Closes the channel if the file was deleted or moved by other process, the next write creates the file again.
+   */
+  private synchronized void reopenIfMoved() {
+    if (channel != null && !Files.exists(path)) {
+      LOGGER.log(Level.FINE, "{0} was deleted or moved, it is created again", path);
+      closeChannel();
+    }
+  }
+
+  private void writeToChannel(@NonNull ByteBuffer data) throws IOException {
+    FileChannel fileChannel = getChannel();
+    if (maxSegmentSize > 0 && size > 0 && size + data.remaining() > maxSegmentSize) {
+      roll();
+      fileChannel = getChannel();
+    }
+    try {
+      while (data.hasRemaining()) {
+        size += fileChannel.write(data);
+      }
+    } catch (IOException e) {
+      closeChannel();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the channel to write, it is opened if it is closed.
+   */
+  @NonNull
+  private FileChannel getChannel() throws IOException {
+    if (channel != null && !channel.isOpen()) {
+      closeChannel();
+    }
+    if (channel == null) {
+      Path parent = path.getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      size = channel.size();
+    }
+    return channel;
+  }
+
+  private void roll() throws IOException {
+    closeChannel();
+    if (maxSegments > 0) {
+      Files.deleteIfExists(segment(maxSegments));
+      for (int i = maxSegments - 1; i > 0; i--) {
+        Path segment = segment(i);
+        if (Files.exists(segment)) {
+          Files.move(segment, segment(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      Files.move(path, segment(1), StandardCopyOption.REPLACE_EXISTING);
+    } else {
+      Files.deleteIfExists(path);
+    }
+    LOGGER.log(Level.FINE, "rolled {0}", path);
+  }
+
+  @NonNull
+  private Path segment(int index) {
+    return path.resolveSibling(path.getFileName() + "." + index);
+  }
+
+  private void closeChannel() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.FINEST, "error closing " + path, e);
+      }
+      channel = null;
+      size = 0;
+    }
+  }
+}
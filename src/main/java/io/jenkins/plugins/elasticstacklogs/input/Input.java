@@ -4,13 +4,20 @@
  */
 package io.jenkins.plugins.elasticstacklogs.input;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import edu.umd.cs.findbugs.annotations.NonNull;
 
 /**
  * Interface for implement log inputs.
+ * The events are written one by one with {@link #write(String)} or in batches with {@link #write(List)}
+ * and {@link #write(ByteBuffer)}, the inputs that buffer the events write them on {@link #flush()} and {@link #close()}.
  */
-public abstract class Input {
+public abstract class Input implements Closeable {
 
   /**
    * Writes a string in the Filebeat input.
@@ -21,4 +28,87 @@ public abstract class Input {
    */
   public abstract boolean write(@NonNull String value) throws IOException;
 
+  /**
+   * Writes several events, by default the events are written one by one.
+   *
+   * @param values events to write, every event must end with a new line.
+   * @return true if all the events were written.
+   * @throws IOException
+   */
+  public boolean write(@NonNull List<String> values) throws IOException {
+    boolean ret = true;
+    for (String value : values) {
+      ret &= write(value);
+    }
+    return ret;
+  }
+
+  /**
+   * Writes several events already encoded, by default the buffer is split in events and written with {@link #write(List)}.
+   * The caller reuses the buffer after the method returns, so the implementations must copy the bytes they keep.
+   *
+   * @param events UTF-8 encoded events separated by new lines, the buffer is consumed.
+   * @return true if all the events were written.
+   * @throws IOException
+   */
+  public boolean write(@NonNull ByteBuffer events) throws IOException {
+    return write(split(events));
+  }
+
+  /**
+   * Writes the events buffered by the input.
+   *
+   * @throws IOException
+   */
+  public void flush() throws IOException {
+  }
+
+  /**
+   * Releases the resources used by the input (connections, files, threads, ...).
+   *
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException {
+  }
+
+  /**
+   * Splits a buffer of UTF-8 encoded events separated by new lines, every event keeps its new line.
+   *
+   * @param events buffer to split, it is consumed.
+   * @return the events.
+   */
+  @NonNull
+  protected static List<String> split(@NonNull ByteBuffer events) {
+    List<String> values = new ArrayList<>();
+    for (ByteBuffer event : slice(events)) {
+      byte[] bytes = new byte[event.remaining()];
+      event.get(bytes);
+      values.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return values;
+  }
+
+  /**
+   * Splits a buffer of events separated by new lines in views of the buffer, every event keeps its new line.
+   *
+   * @param events buffer to split, it is consumed.
+   * @return a view of the buffer per event.
+   */
+  @NonNull
+  protected static List<ByteBuffer> slice(@NonNull ByteBuffer events) {
+    List<ByteBuffer> values = new ArrayList<>();
+    int start = events.position();
+    int limit = events.limit();
+    for (int i = start; i < limit; i++) {
+      if (events.get(i) == '\n' || i == limit - 1) {
+        ByteBuffer event = events.duplicate();
+        event.position(start).limit(i + 1);
+        values.add(event.slice());
+        start = i + 1;
+      }
+    }
+    events.position(limit);
+    return values;
+  }
 }
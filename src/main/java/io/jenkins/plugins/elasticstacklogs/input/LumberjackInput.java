@@ -0,0 +1,295 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Implementation of the Beats (Lumberjack v2) protocol used by the beats input of Logstash.
+ * The events are sent in windows of JSON frames, compressed in a single frame, and the window is not
+ * finished until Logstash acknowledges the sequence number of the last event.
+ * If the connection is broken or the ACK does not arrive, it reconnects and sends again the events not acknowledged,
+ * so every event is delivered at least once.
+ * Every write waits for the ACK of its windows, so the input is always wrapped in an {@link AsyncInput}
+ * that writes the events of the builds in batches from a background thread.
+ */
+public class LumberjackInput extends Input {
+  private static final Logger LOGGER = Logger.getLogger(LumberjackInput.class.getName());
+  public static final int DEFAULT_WINDOW_SIZE = 1024;
+  public static final int DEFAULT_COMPRESSION_LEVEL = 3;
+  /**
+   * Async buffer size used when the configuration does not set one.
+   */
+  public static final int DEFAULT_ASYNC_BUFFER_SIZE = 8192;
+  public static final int MAX_RETRIES = 3;
+  /**
+   * Wait before the first retry of a window, it is doubled on every retry.
+   */
+  public static final long RETRY_DELAY_MILLIS = 500;
+  public static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+  public static final int ACK_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+  public static final byte VERSION = '2';
+  public static final byte WINDOW_SIZE = 'W';
+  public static final byte COMPRESSED = 'C';
+  public static final byte JSON = 'J';
+  public static final byte ACK = 'A';
+
+  @NonNull
+  private final String host;
+  private final int port;
+  private final int windowSize;
+  private final int compressionLevel;
+  @CheckForNull
+  private Socket socket;
+  @CheckForNull
+  private DataOutputStream out;
+  @CheckForNull
+  private DataInputStream in;
+
+  /**
+   * @param host             host where Logstash is listening.
+   * @param port             port of the beats input of Logstash.
+   * @param windowSize       max number of events sent before waiting for the ACK.
+   * @param compressionLevel zlib compression level of the windows, 0 sends the frames without compression.
+   */
+  public LumberjackInput(@NonNull String host, int port, int windowSize, int compressionLevel) {
+    this.host = host;
+    this.port = port;
+    this.windowSize = windowSize > 0 ? windowSize : DEFAULT_WINDOW_SIZE;
+    this.compressionLevel = Math.min(Math.max(compressionLevel, Deflater.NO_COMPRESSION), Deflater.BEST_COMPRESSION);
+  }
+
+  @Override
+  public boolean write(@NonNull String value) throws IOException {
+    return write(Collections.singletonList(value));
+  }
+
+  @Override
+  public boolean write(@NonNull List<String> values) throws IOException {
+    List<byte[]> events = new ArrayList<>(values.size());
+    for (String value : values) {
+      byte[] event = encode(value);
+      if (event.length > 0) {
+        events.add(event);
+      }
+    }
+    send(events);
+    return true;
+  }
+
+  @Override
+  public boolean write(@NonNull ByteBuffer events) throws IOException {
+    List<byte[]> values = new ArrayList<>();
+    for (ByteBuffer event : slice(events)) {
+      int length = event.remaining();
+      if (length > 0 && event.get(event.limit() - 1) == '\n') {
+        length--;
+      }
+      if (length > 0) {
+        byte[] value = new byte[length];
+        event.get(value);
+        values.add(value);
+      }
+    }
+    send(values);
+    return true;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    disconnect();
+  }
+
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  @Override
+  public String toString() {
+    return "LumberjackInput{" + "host='" + host + '\'' + ", port=" + port + ", windowSize=" + windowSize
+      + ", compressionLevel=" + compressionLevel + '}';
+  }
+
+  @NonNull
+  private static byte[] encode(@NonNull String value) {
+    String event = value.endsWith("\n") ? value.substring(0, value.length() - 1) : value;
+    return event.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Sends the events in windows, a window is sent again from the first event not acknowledged if it fails,
+   * with an exponential backoff between the attempts.
+   */
+  private synchronized void send(@NonNull List<byte[]> events) throws IOException {
+    for (int start = 0; start < events.size(); start += windowSize) {
+      List<byte[]> window = events.subList(start, Math.min(start + windowSize, events.size()));
+      int acked = 0;
+      IOException error = null;
+      for (int attempt = 0; attempt <= MAX_RETRIES && acked < window.size(); attempt++) {
+        if (attempt > 0) {
+          backoff(attempt);
+        }
+        try {
+          acked += sendWindow(window.subList(acked, window.size()));
+        } catch (IOException e) {
+          LOGGER.log(Level.FINE, "failed to send a window to " + host + ":" + port + ", " + acked
+                                 + " events acknowledged", e);
+          error = e;
+          disconnect();
+        }
+      }
+      if (acked < window.size()) {
+        throw error != null ? error : new IOException("the events were not acknowledged by " + host + ":" + port);
+      }
+    }
+  }
+
+  private static void backoff(int attempt) throws InterruptedIOException {
+    try {
+      Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting to send the window again");
+    }
+  }
+
+  /**
+   * Sends a window and waits for its ACK.
+   *
+   * @return number of events acknowledged, if the connection fails the events acknowledged before are counted.
+   */
+  private int sendWindow(@NonNull List<byte[]> window) throws IOException {
+    connect();
+    DataOutputStream output = out;
+    DataInputStream input = in;
+    if (output == null || input == null) {
+      throw new IOException("not connected to " + host + ":" + port);
+    }
+    output.writeByte(VERSION);
+    output.writeByte(WINDOW_SIZE);
+    output.writeInt(window.size());
+    byte[] frames = frames(window);
+    if (compressionLevel > Deflater.NO_COMPRESSION) {
+      byte[] compressed = compress(frames);
+      output.writeByte(VERSION);
+      output.writeByte(COMPRESSED);
+      output.writeInt(compressed.length);
+      output.write(compressed);
+    } else {
+      output.write(frames);
+    }
+    output.flush();
+
+    int acked = 0;
+    try {
+      while (acked < window.size()) {
+        byte version = input.readByte();
+        byte type = input.readByte();
+        if (version != VERSION || type != ACK) {
+          throw new IOException("unexpected frame " + (char) version + (char) type + " from " + host + ":" + port);
+        }
+        // Logstash sends partial ACKs while it is processing a big window
+        acked = Math.min(Math.max(acked, input.readInt()), window.size());
+      }
+    } catch (IOException e) {
+      if (acked > 0) {
+        LOGGER.log(Level.FINE, "connection to " + host + ":" + port + " broken after a partial ACK", e);
+        disconnect();
+        return acked;
+      }
+      throw e;
+    }
+    return acked;
+  }
+
+  /**
+   * Encodes the events as JSON frames, the sequence numbers start on 1 in every window.
+   */
+  @NonNull
+  private static byte[] frames(@NonNull List<byte[]> window) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    DataOutputStream frames = new DataOutputStream(buffer);
+    int sequence = 1;
+    for (byte[] event : window) {
+      frames.writeByte(VERSION);
+      frames.writeByte(JSON);
+      frames.writeInt(sequence++);
+      frames.writeInt(event.length);
+      frames.write(event);
+    }
+    frames.flush();
+    return buffer.toByteArray();
+  }
+
+  @NonNull
+  private byte[] compress(@NonNull byte[] frames) throws IOException {
+    Deflater deflater = new Deflater(compressionLevel);
+    try {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream(frames.length / 2 + 64);
+      try (DeflaterOutputStream compressed = new DeflaterOutputStream(buffer, deflater)) {
+        compressed.write(frames);
+      }
+      return buffer.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void connect() throws IOException {
+    if (socket != null && !socket.isClosed()) {
+      return;
+    }
+    Socket newSocket = new Socket();
+    try {
+      newSocket.setTcpNoDelay(true);
+      newSocket.setKeepAlive(true);
+      newSocket.setSoTimeout(ACK_TIMEOUT_MILLIS);
+      newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+      out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+      in = new DataInputStream(newSocket.getInputStream());
+      socket = newSocket;
+    } catch (IOException e) {
+      newSocket.close();
+      throw e;
+    }
+    LOGGER.log(Level.FINE, "connected to {0}:{1}", new Object[] { host, String.valueOf(port) });
+  }
+
+  private void disconnect() {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.FINE, "failed to close the connection", e);
+      }
+    }
+    socket = null;
+    out = null;
+    in = null;
+  }
+}
@@ -5,11 +5,13 @@
 package io.jenkins.plugins.elasticstacklogs.input;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import io.opentelemetry.exporter.otlp.logs.OtlpGrpcLogExporter;
+import io.opentelemetry.sdk.logs.LogEmitter;
 import io.opentelemetry.sdk.logs.SdkLogEmitterProvider;
 import io.opentelemetry.sdk.logs.export.BatchLogProcessor;
 import io.opentelemetry.sdk.logs.export.InMemoryLogExporter;
@@ -30,6 +32,7 @@ public class OpentelemetryLogsInput extends Input {
   public static final int HTTP_PORT = 80;
   public static final int HTTPS_PORT = 443;
   public static final int GRPC_PORT = 4317;
+  public static final int SHUTDOWN_TIMEOUT_SECONDS = 10;
   private static final Logger LOGGER = Logger.getLogger(OpentelemetryLogsInput.class.getName());
   @NonNull
   private String endpoint;
@@ -37,6 +40,7 @@ public class OpentelemetryLogsInput extends Input {
   private BatchLogProcessor processor;
   private LogExporter exporter;
   private SdkLogEmitterProvider logEmitterProvider;
+  private LogEmitter logEmitter;
   private final AtomicLong count = new AtomicLong(0);
 
   @DataBoundConstructor
@@ -60,6 +64,7 @@ public class OpentelemetryLogsInput extends Input {
                                  .setScheduleDelay(SCHEDULE_DELAY_MILLIS, TimeUnit.MILLISECONDS)
                                  .build();
     logEmitterProvider = SdkLogEmitterProvider.builder().addLogProcessor(processor).build();
+    logEmitter = logEmitterProvider.logEmitterBuilder(getClass().getName()).build();
   }
 
   private static int getEndpointPort(@NonNull String endpoint) {
@@ -109,15 +114,45 @@ public class OpentelemetryLogsInput extends Input {
 
   @Override
   public boolean write(@NonNull String value) throws IOException {
-    logEmitterProvider
-      .logEmitterBuilder(getClass().getName())
-      .build()
+    emit(value);
+    count.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Emits several log records, they are exported in batches by the {@link BatchLogProcessor}.
+   */
+  @Override
+  public boolean write(@NonNull List<String> values) throws IOException {
+    for (String value : values) {
+      emit(value);
+    }
+    count.addAndGet(values.size());
+    return true;
+  }
+
+  /**
+   * Exports the log records queued in the processor.
+   */
+  @Override
+  public void flush() throws IOException {
+    logEmitterProvider.forceFlush().join(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private void emit(@NonNull String value) {
+    logEmitter
       .logBuilder()
       .setName(getClass().getName())
       .setBody(value)
       .emit();
-    count.incrementAndGet();
-    return true;
+  }
+
+  /**
+   * Exports the pending log records and shuts down the exporter and its processor thread.
+   */
+  @Override
+  public void close() throws IOException {
+    logEmitterProvider.shutdown().join(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
   }
 
   public long getCount() {
@@ -0,0 +1,23 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+/**
+ * What to do with a new event when the buffer of an {@link AsyncInput} is full.
+ */
+public enum OverflowPolicy {
+  /**
+   * The build thread waits until there is space in the buffer.
+   */
+  BLOCK,
+  /**
+   * The oldest event in the buffer is discarded.
+   */
+  DROP_OLDEST,
+  /**
+   * The event is written to a file on disk and sent when the buffer is drained.
+   */
+  SPILL
+}
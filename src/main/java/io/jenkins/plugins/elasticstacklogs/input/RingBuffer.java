@@ -0,0 +1,122 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Bounded lock-free queue backed by a ring buffer.
+ * Every slot has a sequence number that tells producers and consumers whether the slot is free or full,
+ * so {@link #offer(Object)} and {@link #poll()} only need a CAS on the tail or the head
+ * (Dmitry Vyukov's bounded MPMC queue).
+ *
+ * @param <E> type of the elements.
+ */
+class RingBuffer<E> {
+  private final int mask;
+  private final AtomicReferenceArray<E> elements;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * @param capacity min capacity of the buffer, it is rounded up to a power of two.
+   */
+  RingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    mask = size - 1;
+    elements = new AtomicReferenceArray<>(size);
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @param element element to add.
+   * @return false if the buffer is full.
+   */
+  boolean offer(@NonNull E element) {
+    long pos = tail.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          elements.set(index, element);
+          sequences.set(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  /**
+   * @return the oldest element, or null if the buffer is empty.
+   */
+  @CheckForNull
+  E poll() {
+    long pos = head.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long diff = sequences.get(index) - (pos + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          E element = elements.get(index);
+          elements.set(index, null);
+          sequences.set(index, pos + mask + 1);
+          return element;
+        }
+        pos = head.get();
+      } else if (diff < 0) {
+        return null;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  /**
+   * Moves up to max elements to a list.
+   *
+   * @param list list to add the elements.
+   * @param max  max number of elements to move.
+   * @return number of elements moved.
+   */
+  int drainTo(@NonNull List<E> list, int max) {
+    int count = 0;
+    E element;
+    while (count < max && (element = poll()) != null) {
+      list.add(element);
+      count++;
+    }
+    return count;
+  }
+
+  boolean isEmpty() {
+    return head.get() >= tail.get();
+  }
+
+  /**
+   * @return approximate number of elements in the buffer.
+   */
+  int size() {
+    return (int) Math.max(tail.get() - head.get(), 0);
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * File backed FIFO queue of events split in segment files.
+ * The events are stored as length-prefixed UTF-8 records, {@link #read(int)} returns the oldest events
+ * and {@link #commit(int)} removes them once they are delivered.
+ * The segments left by a previous process in the directory are recovered and their events are read again,
+ * so an event can be delivered more than once but it is not lost.
+ * When the spool reaches its max size the oldest segment is discarded.
+ */
+class Spool implements Closeable {
+  private static final Logger LOGGER = Logger.getLogger(Spool.class.getName());
+  /**
+   * Max size in bytes of the segments of the spools.
+   */
+  static final long MAX_SEGMENT_SIZE = 16L * 1024L * 1024L;
+  /**
+   * Number of directories tried by {@link #open(Path, long, long)} when the directory is in use.
+   */
+  static final int MAX_DIRECTORIES = 10;
+  private static final int HEADER_SIZE = Integer.BYTES;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".spool";
+  private static final String LOCK_FILE = "spool.lock";
+
+  @NonNull
+  private final Path directory;
+  private final long maxSegmentSize;
+  private final long maxSize;
+  private final FileChannel lockChannel;
+  private final FileLock lock;
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private long nextIndex;
+  private long readPosition;
+  private final List<Long> pending = new ArrayList<>();
+  private long size;
+  private long dropped;
+
+  /**
+   * @param directory      directory to store the segments, it is created if it does not exists.
+   * @param maxSegmentSize size in bytes to start a new segment.
+   * @param maxSize        max size in bytes of all the segments, the oldest segment is discarded above it.
+   * @throws IOException if it is not possible to create the directory or it is used by other spool.
+   */
+  Spool(@NonNull Path directory, long maxSegmentSize, long maxSize) throws IOException {
+    this.directory = directory;
+    this.maxSegmentSize = Math.max(maxSegmentSize, 1);
+    this.maxSize = Math.max(maxSize, this.maxSegmentSize);
+    Files.createDirectories(directory);
+    lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    FileLock fileLock = null;
+    try {
+      fileLock = lockChannel.tryLock();
+    } catch (IOException | RuntimeException e) {
+      LOGGER.log(Level.FINE, "failed to lock the spool " + directory, e);
+    }
+    if (fileLock == null) {
+      lockChannel.close();
+      throw new IOException("the spool " + directory + " is in use");
+    }
+    lock = fileLock;
+    try {
+      recover();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens the spool of a directory, if the directory is locked by other process (e.g. other agent
+   * on the same machine) the next free directory ({@code directory-1}, {@code directory-2}, ...) is used.
+   *
+   * @param directory      directory to store the segments.
+   * @param maxSegmentSize size in bytes to start a new segment.
+   * @param maxSize        max size in bytes of all the segments.
+   * @return the spool.
+   * @throws IOException if it is not possible to open any of the directories.
+   */
+  @NonNull
+  static Spool open(@NonNull Path directory, long maxSegmentSize, long maxSize) throws IOException {
+    IOException error = null;
+    for (int i = 0; i < MAX_DIRECTORIES; i++) {
+      Path dir = i == 0 ? directory : directory.resolveSibling(directory.getFileName() + "-" + i);
+      try {
+        return new Spool(dir, maxSegmentSize, maxSize);
+      } catch (IOException e) {
+        LOGGER.log(Level.FINE, "failed to open the spool " + dir, e);
+        error = e;
+      }
+    }
+    throw error;
+  }
+
+  /**
+   * Appends an event at the end of the spool.
+   *
+   * @param event event to store.
+   * @throws IOException if it is not possible to write the event.
+   */
+  synchronized void append(@NonNull String event) throws IOException {
+    append(event.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Appends an event already encoded in UTF-8 at the end of the spool.
+   *
+   * @param bytes event to store.
+   * @throws IOException if it is not possible to write the event.
+   */
+  synchronized void append(@NonNull byte[] bytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+    buffer.putInt(bytes.length).put(bytes).flip();
+    Segment tail = segments.peekLast();
+    if (tail == null || (tail.size > 0 && tail.size + buffer.remaining() > maxSegmentSize)) {
+      tail = newSegment();
+    }
+    int length = buffer.remaining();
+    while (buffer.hasRemaining()) {
+      tail.channel.write(buffer, tail.size + length - buffer.remaining());
+    }
+    tail.size += length;
+    tail.events++;
+    size += length;
+    while (size > maxSize && segments.size() > 1) {
+      dropHead();
+    }
+  }
+
+  /**
+   * Reads the oldest events, the events are not removed until {@link #commit(int)} is called.
+   *
+   * @param max max number of events to read.
+   * @return the events read, empty if the spool is empty.
+   * @throws IOException if it is not possible to read the events.
+   */
+  @NonNull
+  synchronized List<String> read(int max) throws IOException {
+    List<String> events = new ArrayList<>();
+    pending.clear();
+    Segment head = head();
+    if (head == null) {
+      return events;
+    }
+    long position = readPosition;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (events.size() < max && position < head.size) {
+      header.clear();
+      readFully(head.channel, head.path, header, position);
+      int length = header.getInt(0);
+      ByteBuffer data = ByteBuffer.allocate(length);
+      readFully(head.channel, head.path, data, position + HEADER_SIZE);
+      events.add(new String(data.array(), StandardCharsets.UTF_8));
+      position += HEADER_SIZE + length;
+      pending.add(position);
+    }
+    return events;
+  }
+
+  /**
+   * Removes the first events returned by the last {@link #read(int)}.
+   *
+   * @param count number of events delivered.
+   * @throws IOException if it is not possible to delete or truncate the segment.
+   */
+  synchronized void commit(int count) throws IOException {
+    Segment head = segments.peekFirst();
+    if (count <= 0 || head == null || pending.isEmpty()) {
+      return;
+    }
+    long position = pending.get(Math.min(count, pending.size()) - 1);
+    size -= position - readPosition;
+    head.events -= Math.min(count, pending.size());
+    readPosition = position;
+    pending.clear();
+    if (readPosition >= head.size) {
+      if (segments.size() > 1) {
+        segments.removeFirst().delete();
+      } else {
+        head.channel.truncate(0);
+        head.size = 0;
+        head.events = 0;
+        size = 0;
+      }
+      readPosition = 0;
+    }
+  }
+
+  synchronized boolean isEmpty() {
+    return size <= 0;
+  }
+
+  /**
+   * @return bytes used by the events stored.
+   */
+  synchronized long size() {
+    return size;
+  }
+
+  /**
+   * @return number of events discarded because the spool was full.
+   */
+  synchronized long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Closes the segments, the events not delivered are kept in the directory.
+   *
+   * @throws IOException if it is not possible to close the files.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      for (Segment segment : segments) {
+        segment.channel.close();
+      }
+      if (lock.isValid()) {
+        lock.release();
+      }
+    } finally {
+      lockChannel.close();
+    }
+  }
+
+  /**
+   * Closes the spool and deletes the segments and the directory.
+   *
+   * @throws IOException if it is not possible to delete the files.
+   */
+  synchronized void delete() throws IOException {
+    close();
+    for (Segment segment : segments) {
+      Files.deleteIfExists(segment.path);
+    }
+    segments.clear();
+    Files.deleteIfExists(directory.resolve(LOCK_FILE));
+    Files.deleteIfExists(directory);
+  }
+
+  /**
+   * Loads the segments left in the directory, a truncated record at the end of a segment is removed.
+   */
+  private void recover() throws IOException {
+    TreeMap<Long, Path> found = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          found.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())),
+                    file
+                   );
+        } catch (NumberFormatException e) {
+          LOGGER.log(Level.FINE, "ignoring the file {0}", file);
+        }
+      }
+    }
+    for (Path file : found.values()) {
+      Segment segment = new Segment(file);
+      segment.scan();
+      segments.addLast(segment);
+      size += segment.size;
+    }
+    nextIndex = found.isEmpty() ? 0 : found.lastKey() + 1;
+    if (size > 0) {
+      LOGGER.log(Level.INFO, "recovered {0} bytes of events from the spool {1}", new Object[] { size, directory });
+    }
+  }
+
+  @NonNull
+  private Segment newSegment() throws IOException {
+    Segment segment = new Segment(directory.resolve(SEGMENT_PREFIX + nextIndex++ + SEGMENT_SUFFIX));
+    segment.channel.truncate(0);
+    segments.addLast(segment);
+    return segment;
+  }
+
+  /**
+   * @return the oldest segment with events to read, the segments already read are deleted.
+   */
+  @CheckForNull
+  private Segment head() throws IOException {
+    Segment head = segments.peekFirst();
+    while (head != null && readPosition >= head.size && segments.size() > 1) {
+      segments.removeFirst().delete();
+      readPosition = 0;
+      head = segments.peekFirst();
+    }
+    return head;
+  }
+
+  private void dropHead() throws IOException {
+    Segment head = segments.removeFirst();
+    size -= head.size - readPosition;
+    dropped += head.events;
+    readPosition = 0;
+    pending.clear();
+    head.delete();
+    LOGGER.log(Level.WARNING, "the spool {0} is full, {1} events were discarded", new Object[] { directory, head.events });
+  }
+
+  private static void readFully(@NonNull FileChannel channel, @NonNull Path path, @NonNull ByteBuffer buffer,
+                                long position) throws IOException {
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, offset);
+      if (read < 0) {
+        throw new IOException("unexpected end of the spool file " + path);
+      }
+      offset += read;
+    }
+  }
+
+  /**
+   * A segment file and the number of events it has.
+   */
+  private static class Segment {
+    @NonNull
+    private final Path path;
+    private final FileChannel channel;
+    private long size;
+    private long events;
+
+    Segment(@NonNull Path path) throws IOException {
+      this.path = path;
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                      StandardOpenOption.WRITE
+                                     );
+    }
+
+    /**
+     * Counts the complete records and truncates the file after the last one.
+     */
+    void scan() throws IOException {
+      long fileSize = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      long position = 0;
+      while (position + HEADER_SIZE <= fileSize) {
+        header.clear();
+        readFully(channel, path, header, position);
+        int length = header.getInt(0);
+        if (length < 0 || position + HEADER_SIZE + length > fileSize) {
+          break;
+        }
+        position += HEADER_SIZE + length;
+        events++;
+      }
+      if (position < fileSize) {
+        channel.truncate(position);
+      }
+      size = position;
+    }
+
+    void delete() throws IOException {
+      channel.close();
+      Files.deleteIfExists(path);
+    }
+  }
+}
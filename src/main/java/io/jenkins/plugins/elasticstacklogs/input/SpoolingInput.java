@@ -0,0 +1,209 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Input that writes the events to an on-disk spool when the delegated input fails,
+ * and replays them in order once the delegated input recovers.
+ * While the spool has events the new events are appended to it, so they are not sent before the older ones.
+ * Every input has its own replay thread. While the delegated input fails, the replay tries one batch per interval,
+ * limited to a number of events per second to not flood the sink when it comes back. Once a batch is accepted
+ * the spool is sent as fast as the sink takes it, so it drains faster than the build writes new events.
+ */
+public class SpoolingInput extends Input {
+  private static final Logger LOGGER = Logger.getLogger(SpoolingInput.class.getName());
+  public static final int DEFAULT_REPLAY_RATE = 1000;
+  private static final long REPLAY_INTERVAL_MILLIS = 100;
+
+  @NonNull
+  private final Input delegate;
+  @NonNull
+  private final Spool spool;
+  private final int eventsPerReplay;
+  private final Thread replayer;
+  private final Object replaySignal = new Object();
+  private volatile boolean closed;
+
+  private final AtomicLong spooled = new AtomicLong();
+  private final AtomicLong replayed = new AtomicLong();
+
+  /**
+   * @param delegate   input to write the events.
+   * @param directory  directory to store the spool segments, the events left by a previous process are replayed.
+   *                   If it is in use by other process the next free directory is used.
+   * @param maxSize    max size in bytes of the spool, the oldest events are discarded above it.
+   * @param replayRate max number of events per second replayed from the spool while the delegated input fails.
+   * @throws IOException if it is not possible to open the spool.
+   */
+  public SpoolingInput(@NonNull Input delegate, @NonNull Path directory, long maxSize, int replayRate)
+    throws IOException {
+    this.delegate = delegate;
+    this.spool = Spool.open(directory, Math.min(Spool.MAX_SEGMENT_SIZE, Math.max(maxSize / 4, 1)), maxSize);
+    int rate = replayRate > 0 ? replayRate : DEFAULT_REPLAY_RATE;
+    this.eventsPerReplay = (int) Math.max(rate * REPLAY_INTERVAL_MILLIS / 1000, 1);
+    this.replayer = new Thread(this::replayLoop, "Elastic Stack logs spool replay " + directory.getFileName());
+    this.replayer.setDaemon(true);
+    this.replayer.start();
+  }
+
+  @Override
+  public boolean write(@NonNull String value) throws IOException {
+    if (spool.isEmpty()) {
+      try {
+        if (delegate.write(value)) {
+          return true;
+        }
+      } catch (IOException | RuntimeException e) {
+        LOGGER.log(Level.FINE, "failed to send a message, it is spooled", e);
+      }
+    }
+    spool.append(value);
+    spooled.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Writes the events in one call to the delegated input, all of them are spooled if it fails.
+   */
+  @Override
+  public boolean write(@NonNull List<String> values) throws IOException {
+    if (spool.isEmpty()) {
+      try {
+        if (delegate.write(values)) {
+          return true;
+        }
+      } catch (IOException | RuntimeException e) {
+        LOGGER.log(Level.FINE, "failed to send " + values.size() + " messages, they are spooled", e);
+      }
+    }
+    for (String value : values) {
+      spool.append(value);
+    }
+    spooled.addAndGet(values.size());
+    return true;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    delegate.flush();
+  }
+
+  /**
+   * Stops the replay and closes the delegated input, the events not replayed stay in the spool.
+   *
+   * @throws IOException if it is not possible to close the spool or the delegated input.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    synchronized (replaySignal) {
+      replaySignal.notifyAll();
+    }
+    LOGGER.log(Level.FINE, "closing {0}", this);
+    synchronized (this) {
+      try {
+        spool.close();
+      } finally {
+        delegate.close();
+      }
+    }
+  }
+
+  /**
+   * @return events written to the spool.
+   */
+  public long getSpooled() {
+    return spooled.get();
+  }
+
+  /**
+   * @return events replayed from the spool.
+   */
+  public long getReplayed() {
+    return replayed.get();
+  }
+
+  /**
+   * @return events discarded because the spool was full.
+   */
+  public long getDropped() {
+    return spool.getDropped();
+  }
+
+  /**
+   * @return true if there are events waiting in the spool.
+   */
+  public boolean isSpooling() {
+    return !spool.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "SpoolingInput{" + "delegate=" + delegate + ", spooled=" + spooled + ", replayed=" + replayed
+      + ", dropped=" + getDropped() + '}';
+  }
+
+  /**
+   * Replays the spool until the input is closed, it waits an interval when the spool is empty or the replay fails.
+   */
+  private void replayLoop() {
+    while (!closed) {
+      if (replay()) {
+        continue;
+      }
+      synchronized (replaySignal) {
+        try {
+          if (!closed) {
+            replaySignal.wait(REPLAY_INTERVAL_MILLIS);
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the oldest events of the spool in one batch, if it fails they are written again on the next run.
+   *
+   * @return true if the events were written, false if the spool is empty or the write failed.
+   */
+  private synchronized boolean replay() {
+    if (closed) {
+      return false;
+    }
+    try {
+      if (spool.isEmpty()) {
+        return false;
+      }
+      List<String> events = spool.read(eventsPerReplay);
+      if (!events.isEmpty() && writeQuietly(events)) {
+        spool.commit(events.size());
+        replayed.addAndGet(events.size());
+        return true;
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.log(Level.WARNING, "failed to replay the spool", e);
+    }
+    return false;
+  }
+
+  private boolean writeQuietly(@NonNull List<String> events) {
+    try {
+      return delegate.write(events);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.log(Level.FINE, "failed to replay the messages", e);
+      return false;
+    }
+  }
+}
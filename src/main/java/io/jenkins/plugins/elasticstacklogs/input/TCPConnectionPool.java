@@ -0,0 +1,285 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Pool of long-lived {@link SocketChannel}s to a host:port.
+ * There is one pool per host:port and size in the JVM, the connections are reused between writes,
+ * the broken connections are discarded and reconnected with an exponential backoff.
+ * The pools are reference counted, a pool is closed when the last input that uses it releases it.
+ */
+class TCPConnectionPool {
+  private static final Logger LOGGER = Logger.getLogger(TCPConnectionPool.class.getName());
+  private static final Map<String, TCPConnectionPool> POOLS = new HashMap<>();
+  /**
+   * Idle time after which a connection is checked before reuse it.
+   */
+  static final long IDLE_CHECK_MILLIS = 1000;
+  static final long MIN_BACKOFF_MILLIS = 100;
+  static final long MAX_BACKOFF_MILLIS = 30000;
+
+  @NonNull
+  private final String host;
+  private final int port;
+  private final int size;
+  private final Semaphore permits;
+  private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+  private final Object backoffLock = new Object();
+  private int failures;
+  private long nextAttempt;
+  private volatile boolean closed;
+  private int references;
+
+  TCPConnectionPool(@NonNull String host, int port, int size) {
+    this.host = host;
+    this.port = port;
+    this.size = size;
+    this.permits = new Semaphore(size, true);
+  }
+
+  /**
+   * @param host host to connect.
+   * @param port port to connect.
+   * @param size max number of connections open at the same time to the host:port.
+   * @return the shared pool for the host:port and size, it is created if it does not exists.
+   * Every call must be paired with a call to {@link #releasePool(TCPConnectionPool)}.
+   */
+  @NonNull
+  static TCPConnectionPool acquire(@NonNull String host, int port, int size) {
+    synchronized (POOLS) {
+      TCPConnectionPool pool = POOLS.computeIfAbsent(key(host, port, size), k -> new TCPConnectionPool(host, port, size));
+      pool.references++;
+      return pool;
+    }
+  }
+
+  /**
+   * Releases a pool acquired with {@link #acquire(String, int, int)}, it is closed if no other input uses it.
+   *
+   * @param pool pool to release.
+   */
+  static void releasePool(@NonNull TCPConnectionPool pool) {
+    synchronized (POOLS) {
+      pool.references--;
+      if (pool.references > 0) {
+        return;
+      }
+      POOLS.remove(key(pool.host, pool.port, pool.size), pool);
+    }
+    pool.close();
+  }
+
+  /**
+   * Writes the whole buffer in one of the connections of the pool.
+   * If the connection is broken it reconnects and retries once, the events written completely before the failure
+   * are not sent again.
+   *
+   * @param buffer bytes to send.
+   * @throws IOException if it is not possible to send the data.
+   */
+  void send(@NonNull ByteBuffer buffer) throws IOException {
+    acquire();
+    try {
+      int start = buffer.position();
+      Connection connection = borrow();
+      try {
+        connection.write(buffer);
+      } catch (IOException e) {
+        LOGGER.log(Level.FINE, "connection to {0}:{1} broken, reconnecting", new Object[] { host, port });
+        connection.close();
+        buffer.position(endOfLastEvent(buffer, start));
+        connection = connect();
+        try {
+          connection.write(buffer);
+        } catch (IOException retryException) {
+          connection.close();
+          throw retryException;
+        }
+      }
+      release(connection);
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Closes the idle connections, and the connections in use when they are returned.
+   */
+  void close() {
+    closed = true;
+    Connection connection;
+    while ((connection = idle.poll()) != null) {
+      connection.close();
+    }
+  }
+
+  /**
+   * Closes all the pools of the JVM.
+   */
+  static void closeAll() {
+    List<TCPConnectionPool> pools;
+    synchronized (POOLS) {
+      pools = new ArrayList<>(POOLS.values());
+      POOLS.clear();
+    }
+    for (TCPConnectionPool pool : pools) {
+      pool.close();
+    }
+  }
+
+  @NonNull
+  private static String key(@NonNull String host, int port, int size) {
+    return host + ":" + port + "#" + size;
+  }
+
+  /**
+   * A failed write can stop in the middle of an event, the event is sent again from its start
+   * and the events before it are not.
+   *
+   * @param buffer buffer whose position is the first byte not written.
+   * @param start  first byte of the buffer.
+   * @return position of the first byte of the event cut by the failure.
+   */
+  private static int endOfLastEvent(@NonNull ByteBuffer buffer, int start) {
+    for (int i = buffer.position() - 1; i >= start; i--) {
+      if (buffer.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return start;
+  }
+
+  private void acquire() throws InterruptedIOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for a connection to " + host + ":" + port);
+    }
+  }
+
+  @NonNull
+  private Connection borrow() throws IOException {
+    Connection connection;
+    while ((connection = idle.poll()) != null) {
+      if (connection.isUsable()) {
+        return connection;
+      }
+      connection.close();
+    }
+    return connect();
+  }
+
+  private void release(@NonNull Connection connection) {
+    if (closed) {
+      connection.close();
+    } else {
+      idle.offer(connection);
+    }
+  }
+
+  @NonNull
+  private Connection connect() throws IOException {
+    synchronized (backoffLock) {
+      long now = System.currentTimeMillis();
+      if (now < nextAttempt) {
+        throw new IOException(
+          "connection to " + host + ":" + port + " failed, next attempt in " + (nextAttempt - now) + "ms");
+      }
+    }
+    SocketChannel channel = null;
+    try {
+      channel = SocketChannel.open(new InetSocketAddress(host, port));
+      channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+      synchronized (backoffLock) {
+        failures = 0;
+        nextAttempt = 0;
+      }
+      return new Connection(channel);
+    } catch (IOException e) {
+      closeQuietly(channel);
+      synchronized (backoffLock) {
+        long backoff = MIN_BACKOFF_MILLIS << Math.min(failures, 16);
+        failures++;
+        nextAttempt = System.currentTimeMillis() + Math.min(backoff, MAX_BACKOFF_MILLIS);
+      }
+      throw e;
+    }
+  }
+
+  private static void closeQuietly(@CheckForNull SocketChannel channel) {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.FINEST, "error closing a connection", e);
+      }
+    }
+  }
+
+  /**
+   * A connection of the pool.
+   */
+  private static class Connection {
+    private final SocketChannel channel;
+    private long lastUsed = System.currentTimeMillis();
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    void write(ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * The other side never sends data, so a non-blocking read that returns -1
+     * means the connection was closed while it was idle.
+     */
+    boolean isUsable() {
+      if (!channel.isOpen()) {
+        return false;
+      }
+      if (System.currentTimeMillis() - lastUsed < IDLE_CHECK_MILLIS) {
+        return true;
+      }
+      try {
+        channel.configureBlocking(false);
+        try {
+          return channel.read(ByteBuffer.allocate(64)) >= 0;
+        } finally {
+          channel.configureBlocking(true);
+        }
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    void close() {
+      closeQuietly(channel);
+    }
+  }
+}
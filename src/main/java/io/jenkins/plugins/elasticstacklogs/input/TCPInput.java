@@ -5,30 +5,85 @@
 package io.jenkins.plugins.elasticstacklogs.input;
 
 import java.io.IOException;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import org.apache.commons.io.IOUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 /**
  * Implementation for the TCP input of filebeat.
+ * The connections are kept open and shared by all the inputs to the same host:port with the same pool size,
+ * see {@link TCPConnectionPool}.
  */
 public class TCPInput extends Input {
-  private final int port;
+  public static final int DEFAULT_POOL_SIZE = 2;
+  private final int poolSize;
   @NonNull
-  private final String host;
+  private final TCPConnectionPool pool;
+  private final AtomicBoolean closed = new AtomicBoolean();
 
   @DataBoundConstructor
   public TCPInput(@NonNull String host, int port) {
-    this.port = port;
-    this.host = host;
+    this(host, port, DEFAULT_POOL_SIZE);
+  }
+
+  /**
+   * @param host     host where Filebeat is listening.
+   * @param port     port where Filebeat is listening.
+   * @param poolSize max number of connections open at the same time, values lower than 1 use {@link #DEFAULT_POOL_SIZE}.
+   */
+  public TCPInput(@NonNull String host, int port, int poolSize) {
+    this.poolSize = poolSize > 0 ? poolSize : DEFAULT_POOL_SIZE;
+    this.pool = TCPConnectionPool.acquire(host, port, this.poolSize);
   }
 
   @Override
   public boolean write(@NonNull String value) throws IOException {
-    try (Socket socket = new Socket(host, port)) {
-      IOUtils.write(value, socket.getOutputStream(), "UTF-8");
+    pool.send(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+    return true;
+  }
+
+  /**
+   * Writes several events with a single write on the connection.
+   */
+  @Override
+  public boolean write(@NonNull List<String> values) throws IOException {
+    byte[][] events = new byte[values.size()][];
+    int size = 0;
+    for (int i = 0; i < events.length; i++) {
+      events[i] = values.get(i).getBytes(StandardCharsets.UTF_8);
+      size += events[i].length;
     }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    for (byte[] event : events) {
+      buffer.put(event);
+    }
+    buffer.flip();
+    return write(buffer);
+  }
+
+  /**
+   * Writes the encoded events with a single write on the connection.
+   */
+  @Override
+  public boolean write(@NonNull ByteBuffer events) throws IOException {
+    pool.send(events);
     return true;
   }
+
+  /**
+   * Releases the shared pool, it is closed if no other input uses it.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed.compareAndSet(false, true)) {
+      TCPConnectionPool.releasePool(pool);
+    }
+  }
+
+  public int getPoolSize() {
+    return poolSize;
+  }
 }
@@ -5,35 +5,107 @@
 package io.jenkins.plugins.elasticstacklogs.input;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 /**
  * Implementation for the UDP input of filebeat.
+ * The datagrams are sent through a shared channel per host:port, see {@link UDPSender}.
  */
 public class UDPInput extends Input {
-  private final int port;
+  private final int maxPayloadSize;
   @NonNull
-  private final String host;
+  private final UDPSender sender;
+  private final AtomicBoolean closed = new AtomicBoolean();
 
   @DataBoundConstructor
   public UDPInput(@NonNull String host, int port) {
-    this.port = port;
-    this.host = host;
+    this(host, port, 0);
+  }
+
+  /**
+   * @param host           host where Filebeat is listening.
+   * @param port           port where Filebeat is listening.
+   * @param maxPayloadSize max size of the datagrams that pack several events,
+   *                       0 sends every event in its own datagram.
+   */
+  public UDPInput(@NonNull String host, int port, int maxPayloadSize) {
+    this.maxPayloadSize = Math.max(maxPayloadSize, 0);
+    this.sender = UDPSender.acquire(host, port);
   }
 
   @Override
   public boolean write(@NonNull String value) throws IOException {
-    try (DatagramSocket socket = new DatagramSocket()) {
-      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-      DatagramPacket packet = new DatagramPacket(bytes, bytes.length, InetAddress.getByName(host), port);
-      socket.send(packet);
+    sender.send(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+    return true;
+  }
+
+  /**
+   * Writes several events, the events are packed in datagrams up to {@link #getMaxPayloadSize()} bytes.
+   * An event bigger than the max payload is sent alone in a datagram.
+   */
+  @Override
+  public boolean write(@NonNull List<String> values) throws IOException {
+    List<ByteBuffer> events = new ArrayList<>(values.size());
+    for (String value : values) {
+      events.add(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
     }
+    send(events);
     return true;
   }
+
+  /**
+   * Writes the encoded events, they are packed in datagrams as in {@link #write(List)}.
+   */
+  @Override
+  public boolean write(@NonNull ByteBuffer events) throws IOException {
+    send(slice(events));
+    return true;
+  }
+
+  private void send(@NonNull List<ByteBuffer> events) throws IOException {
+    if (maxPayloadSize == 0) {
+      for (ByteBuffer event : events) {
+        sender.send(event);
+      }
+      return;
+    }
+    ByteBuffer datagram = ByteBuffer.allocate(maxPayloadSize);
+    for (ByteBuffer event : events) {
+      if (event.remaining() > datagram.remaining() && datagram.position() > 0) {
+        datagram.flip();
+        sender.send(datagram);
+        datagram.clear();
+      }
+      if (event.remaining() > datagram.remaining()) {
+        sender.send(event);
+      } else {
+        datagram.put(event);
+      }
+    }
+    if (datagram.position() > 0) {
+      datagram.flip();
+      sender.send(datagram);
+    }
+  }
+
+  /**
+   * Releases the shared sender, it is closed if no other input uses it.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed.compareAndSet(false, true)) {
+      UDPSender.release(sender);
+    }
+  }
+
+  public int getMaxPayloadSize() {
+    return maxPayloadSize;
+  }
 }
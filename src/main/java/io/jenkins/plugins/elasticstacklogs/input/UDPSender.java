@@ -0,0 +1,159 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.input;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Sends datagrams to a host:port.
+ * There is one sender per host:port in the JVM, it keeps one bound {@link DatagramChannel}
+ * and caches the resolved address of the host for {@link #ADDRESS_TTL_MILLIS}.
+ * The senders are reference counted, a sender is closed when the last input that uses it releases it.
+ */
+class UDPSender {
+  private static final Logger LOGGER = Logger.getLogger(UDPSender.class.getName());
+  private static final Map<String, UDPSender> SENDERS = new HashMap<>();
+  static final long ADDRESS_TTL_MILLIS = 60000;
+
+  @NonNull
+  private final String host;
+  private final int port;
+  private final long addressTtlMillis;
+  @CheckForNull
+  private DatagramChannel channel;
+  @CheckForNull
+  private InetSocketAddress address;
+  private long addressExpiration;
+  private int references;
+
+  UDPSender(@NonNull String host, int port, long addressTtlMillis) {
+    this.host = host;
+    this.port = port;
+    this.addressTtlMillis = addressTtlMillis;
+  }
+
+  /**
+   * @param host host to send the datagrams.
+   * @param port port to send the datagrams.
+   * @return the shared sender for the host:port, it is created if it does not exists.
+   * Every call must be paired with a call to {@link #release(UDPSender)}.
+   */
+  @NonNull
+  static UDPSender acquire(@NonNull String host, int port) {
+    synchronized (SENDERS) {
+      UDPSender sender = SENDERS.computeIfAbsent(key(host, port), k -> new UDPSender(host, port, ADDRESS_TTL_MILLIS));
+      sender.references++;
+      return sender;
+    }
+  }
+
+  /**
+   * Releases a sender acquired with {@link #acquire(String, int)}, it is closed if no other input uses it.
+   *
+   * @param sender sender to release.
+   */
+  static void release(@NonNull UDPSender sender) {
+    synchronized (SENDERS) {
+      sender.references--;
+      if (sender.references > 0) {
+        return;
+      }
+      SENDERS.remove(key(sender.host, sender.port), sender);
+    }
+    sender.close();
+  }
+
+  /**
+   * Sends the remaining bytes of the buffer as a single datagram.
+   *
+   * @param buffer payload of the datagram.
+   * @throws IOException if it is not possible to send the datagram.
+   */
+  synchronized void send(@NonNull ByteBuffer buffer) throws IOException {
+    InetSocketAddress target = resolve();
+    DatagramChannel datagramChannel = getChannel();
+    try {
+      datagramChannel.send(buffer, target);
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Closes the channel, it is open again on the next send.
+   */
+  synchronized void close() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.FINEST, "error closing the channel", e);
+      }
+      channel = null;
+    }
+  }
+
+  /**
+   * Closes all the senders of the JVM.
+   */
+  static void closeAll() {
+    List<UDPSender> senders;
+    synchronized (SENDERS) {
+      senders = new ArrayList<>(SENDERS.values());
+      SENDERS.clear();
+    }
+    for (UDPSender sender : senders) {
+      sender.close();
+    }
+  }
+
+  @NonNull
+  private static String key(@NonNull String host, int port) {
+    return host + ":" + port;
+  }
+
+  @NonNull
+  private DatagramChannel getChannel() throws IOException {
+    if (channel == null || !channel.isOpen()) {
+      channel = DatagramChannel.open();
+      channel.bind(null);
+    }
+    return channel;
+  }
+
+  /**
+   * Resolves the host address when the cached one expires,
+   * if the resolution fails the previous address is used until it is possible to resolve the host again.
+   */
+  @NonNull
+  private InetSocketAddress resolve() throws IOException {
+    long now = System.currentTimeMillis();
+    if (address == null || now >= addressExpiration) {
+      InetSocketAddress resolved = new InetSocketAddress(host, port);
+      addressExpiration = now + addressTtlMillis;
+      if (!resolved.isUnresolved()) {
+        address = resolved;
+      } else if (address != null) {
+        LOGGER.log(Level.FINE, "unable to resolve {0}, using the previous address {1}", new Object[] { host, address });
+      }
+    }
+    if (address == null) {
+      throw new IOException("unable to resolve the host " + host);
+    }
+    return address;
+  }
+}
@@ -7,13 +7,8 @@ package io.jenkins.plugins.elasticstacklogs.log;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.Objects;
-import java.util.TimeZone;
 import javax.annotation.Nonnull;
 import io.jenkins.plugins.elasticstacklogs.config.InputConf;
 import io.jenkins.plugins.elasticstacklogs.config.InputConfiguration;
@@ -54,16 +49,21 @@ public class BuildInfo implements Serializable {
   @Nonnull
   private final InputConf input;
 
+  /**
+   * Key of the build, it is computed the first time it is used.
+   */
+  private transient String key;
+
   public BuildInfo(@Nonnull Run<?, ?> build) {
     this.jobUrl = build.getParent().getAbsoluteUrl();
     this.jobName = build.getParent().getFullDisplayName();
     this.buildId = build.getId();
-    this.startTime = timeStampToString(build.getStartTimeInMillis());
+    this.startTime = TimestampFormatter.toString(build.getStartTimeInMillis());
     InputConf input = InputConfiguration.get().getInput();
     if(input == null){
       throw new NullPointerException("the plugin configuration is incorrect, you must set an input");
     }
-    this.input = InputConfiguration.get().getInput();
+    this.input = input.forBuild();
   }
 
   public static String getKey(String jobUrl, String buildId) throws IOException {
@@ -91,12 +91,6 @@ public class BuildInfo implements Serializable {
     return startTime;
   }
 
-  private String timeStampToString(long millis) {
-    ZoneId utc = TimeZone.getTimeZone("UTC").toZoneId();
-    ZonedDateTime date = ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), utc);
-    return DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").format(date);
-  }
-
   @Nonnull
   public InputConf getInput() {
     return input;
@@ -121,7 +115,10 @@ public class BuildInfo implements Serializable {
   }
 
   public String getKey() throws IOException {
-    return BuildInfo.getKey(jobUrl, buildId);
+    if (key == null) {
+      key = BuildInfo.getKey(jobUrl, buildId);
+    }
+    return key;
   }
 
   @Override
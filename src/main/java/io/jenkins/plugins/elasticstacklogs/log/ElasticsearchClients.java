@@ -0,0 +1,193 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
+import hudson.init.Terminator;
+
+/**
+ * JVM-wide cache of the Elasticsearch clients used to retrieve the logs, there is one client per URL and username.
+ * The clients are created the first time they are used and kept open, so the connections and the I/O reactor
+ * are reused by every console view. They are closed when the Elastic Stack configuration changes,
+ * when the password of the username changes, and when Jenkins stops.
+ */
+public final class ElasticsearchClients {
+  private static final Logger LOGGER = Logger.getLogger(ElasticsearchClients.class.getName());
+  public static final int DEFAULT_MAX_CONNECTIONS = 30;
+  public static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+  private static final Map<Key, Entry> CLIENTS = new HashMap<>();
+  private static int maxConnections = DEFAULT_MAX_CONNECTIONS;
+  private static int keepAliveSeconds = DEFAULT_KEEP_ALIVE_SECONDS;
+
+  private ElasticsearchClients() {
+  }
+
+  /**
+   * Returns the shared client for the URL and credentials, it is created if it does not exists.
+   * If the client of the URL and username was created with another password it is closed and replaced,
+   * so rotating a password does not leave the old client open.
+   * The client must not be closed by the caller.
+   *
+   * @param url      Elasticsearch URL.
+   * @param username username to access Elasticsearch.
+   * @param password password to access Elasticsearch.
+   * @return the shared client.
+   */
+  @NonNull
+  public static RestHighLevelClient get(@NonNull String url, @CheckForNull String username,
+                                        @CheckForNull String password) {
+    Key key = new Key(url, username);
+    Entry stale;
+    RestHighLevelClient client;
+    synchronized (CLIENTS) {
+      Entry entry = CLIENTS.get(key);
+      if (entry != null && Objects.equals(entry.password, password)) {
+        return entry.client;
+      }
+      stale = entry;
+      client = new RestHighLevelClient(builder(url, username, password));
+      CLIENTS.put(key, new Entry(password, client));
+      LOGGER.log(Level.FINE, "created a client for {0}", url);
+    }
+    if (stale != null) {
+      close(stale.client);
+    }
+    return client;
+  }
+
+  /**
+   * @return a builder of clients with the connection pool settings.
+   */
+  @NonNull
+  public static RestClientBuilder builder(@NonNull String url, @CheckForNull String username,
+                                          @CheckForNull String password) {
+    int connections;
+    long keepAliveMillis;
+    synchronized (CLIENTS) {
+      connections = maxConnections;
+      keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAliveSeconds);
+    }
+    BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+    if (username != null) {
+      credentialsProvider.setCredentials(AuthScope.ANY,
+                                         new org.apache.http.auth.UsernamePasswordCredentials(username, password)
+                                        );
+    }
+    RestClientBuilder builder = RestClient.builder(HttpHost.create(url));
+    builder.setHttpClientConfigCallback(
+      httpClientBuilder -> httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider)
+                                            .setMaxConnTotal(connections)
+                                            .setMaxConnPerRoute(connections)
+                                            .setKeepAliveStrategy((response, context) -> keepAliveMillis));
+    return builder;
+  }
+
+  /**
+   * Changes the connection pool settings of the clients, the open clients are closed.
+   *
+   * @param maxConnections   max number of connections to Elasticsearch of every client.
+   * @param keepAliveSeconds seconds to keep an idle connection open.
+   */
+  public static void configure(int maxConnections, int keepAliveSeconds) {
+    synchronized (CLIENTS) {
+      ElasticsearchClients.maxConnections = maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS;
+      ElasticsearchClients.keepAliveSeconds = keepAliveSeconds > 0 ? keepAliveSeconds : DEFAULT_KEEP_ALIVE_SECONDS;
+    }
+    invalidate();
+  }
+
+  /**
+   * Closes the clients, the next request creates new ones.
+   * The requests in progress on a closed client fail.
+   */
+  @Terminator
+  public static void invalidate() {
+    List<Entry> toClose;
+    synchronized (CLIENTS) {
+      toClose = new ArrayList<>(CLIENTS.values());
+      CLIENTS.clear();
+    }
+    for (Entry entry : toClose) {
+      close(entry.client);
+    }
+  }
+
+  private static void close(@NonNull RestHighLevelClient client) {
+    try {
+      client.close();
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "failed to close an Elasticsearch client", e);
+    }
+  }
+
+  /**
+   * @return number of clients open.
+   */
+  public static int size() {
+    synchronized (CLIENTS) {
+      return CLIENTS.size();
+    }
+  }
+
+  private static class Key {
+    @NonNull
+    private final String url;
+    @CheckForNull
+    private final String username;
+
+    Key(@NonNull String url, @CheckForNull String username) {
+      this.url = url;
+      this.username = username;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return url.equals(key.url) && Objects.equals(username, key.username);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(url, username);
+    }
+  }
+
+  /**
+   * Client of a URL and username, with the password it was created with.
+   */
+  private static class Entry {
+    @CheckForNull
+    private final String password;
+    @NonNull
+    private final RestHighLevelClient client;
+
+    Entry(@CheckForNull String password, @NonNull RestHighLevelClient client) {
+      this.password = password;
+      this.client = client;
+    }
+  }
+}
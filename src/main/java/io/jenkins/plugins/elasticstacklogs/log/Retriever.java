@@ -5,34 +5,45 @@
 package io.jenkins.plugins.elasticstacklogs.log;
 
 import java.io.IOException;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.TimeZone;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
 import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.elasticsearch.search.Scroll;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.xcontent.XContentBuilder;
+import org.elasticsearch.xcontent.XContentFactory;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 
 /**
  * This class retrieve logs from Elasticsearch.
@@ -44,15 +55,58 @@ public class Retriever {
   public static final String JOB_URL = "job.url";
   public static final String JOB_ID = "job.id";
   public static final String JOB_NODE = "job.node";
+  /**
+   * Sequence number of the event, it orders the events with the same timestamp.
+   */
+  public static final String EVENT_SEQUENCE = "event.sequence";
   public static final TimeValue DEFAULT_TIMEVALUE = TimeValue.timeValueSeconds(30);
   public static final int PAGE_SIZE = 1000;
+  /**
+   * Max number of log lines of a page, it is the default max result window of Elasticsearch.
+   */
+  public static final int MAX_PAGE_SIZE = 10000;
+  /**
+   * Time to keep the point in time open between two pages.
+   */
+  public static final TimeValue POINT_IN_TIME_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
   public static final String MESSAGE = "message";
+  public static final String ANNOTATIONS = "annotations";
+  /**
+   * Name of the component template and the index template of the log indices.
+   */
+  public static final String TEMPLATE_NAME = "elastic-stack-logs";
+  /**
+   * Priority of the index template, higher than the built-in templates of Elasticsearch.
+   * The template overrides the built-in <code>logs</code> template for the data streams that match its patterns,
+   * so the patterns must be specific to Jenkins, see {@link #templatePatternError(String)}.
+   */
+  public static final int TEMPLATE_PRIORITY = 200;
+  /**
+   * Text that the index patterns of the template must contain before the first wildcard.
+   */
+  public static final String TEMPLATE_PATTERN_MARK = "jenkins";
+  /**
+   * Fields of the source of the events needed to show the log lines.
+   */
+  private static final String[] SOURCE_FIELDS = {MESSAGE, ANNOTATIONS};
+  @Nonnull
+  private final String username;
   @Nonnull
-  private final CredentialsProvider credentialsProvider;
+  private final String password;
   @Nonnull
   private final String url;
   @Nonnull
   private final String index;
+  /**
+   * Time range of the log lines in epoch milliseconds, 0 does not limit it.
+   */
+  private final long from;
+  private final long to;
+  /**
+   * Client of this retriever only, null to use the shared client of the URL and credentials.
+   */
+  @CheckForNull
+  private final RestHighLevelClient client;
 
   /**
    * @param url      Elasticsearch URL.
@@ -61,34 +115,87 @@ public class Retriever {
    * @param index    index or index pattern where the logs are.
    */
   public Retriever(@Nonnull String url, @Nonnull String username, @Nonnull String password, @Nonnull String index) {
+    this(url, username, password, index, 0, 0);
+  }
+
+  /**
+   * The searches only look for the log lines with a timestamp in a time range, so Elasticsearch skips the indices
+   * and shards without lines in the range before searching them.
+   *
+   * @param url      Elasticsearch URL.
+   * @param username Username to access Elasticsearch.
+   * @param password password to access Elasticsearch.
+   * @param index    index or index pattern where the logs are.
+   * @param from     first time of the log lines in epoch milliseconds, 0 to not limit it.
+   * @param to       last time of the log lines in epoch milliseconds, 0 to not limit it.
+   */
+  public Retriever(@Nonnull String url, @Nonnull String username, @Nonnull String password, @Nonnull String index,
+                   long from, long to) {
+    this(url, username, password, index, from, to, null);
+  }
+
+  /**
+   * Retriever that uses its own client instead of the shared one, so credentials that are not configured yet
+   * do not replace the shared client of the URL and username. The caller closes the client.
+   *
+   * @param url      Elasticsearch URL.
+   * @param username Username to access Elasticsearch.
+   * @param password password to access Elasticsearch.
+   * @param index    index or index pattern where the logs are.
+   * @param client   client created with {@link ElasticsearchClients#builder(String, String, String)}.
+   */
+  public Retriever(@Nonnull String url, @Nonnull String username, @Nonnull String password, @Nonnull String index,
+                   @Nonnull RestHighLevelClient client) {
+    this(url, username, password, index, 0, 0, client);
+  }
+
+  private Retriever(@Nonnull String url, @Nonnull String username, @Nonnull String password, @Nonnull String index,
+                    long from, long to, @CheckForNull RestHighLevelClient client) {
     this.url = url;
     this.index = index;
-    this.credentialsProvider = new BasicCredentialsProvider();
-    org.apache.http.auth.UsernamePasswordCredentials credentials = new org.apache.http.auth.UsernamePasswordCredentials(
-      username, password);
-    this.credentialsProvider.setCredentials(AuthScope.ANY, credentials);
+    this.username = username;
+    this.password = password;
+    this.from = from;
+    this.to = to;
+    this.client = client;
   }
 
   /**
    * @return the current timestamp on a valid format to Elasticsearch.
    */
   public static final String now() {
-    ZonedDateTime date = ZonedDateTime.now(TimeZone.getTimeZone("UTC").toZoneId());
-    return DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").format(date);
+    return TimestampFormatter.toString(System.currentTimeMillis());
+  }
+
+  /**
+   * @return Elasticsearch URL.
+   */
+  @Nonnull
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * @return index or index pattern where the logs are.
+   */
+  @Nonnull
+  public String getIndex() {
+    return index;
   }
 
   /**
    * @return the RestClientBuilder to create the Elasticsearch REST client.
    */
   public RestClientBuilder getBuilder() {
-    RestClientBuilder builder = RestClient.builder(HttpHost.create(url));
-    builder.setHttpClientConfigCallback(new RestClientBuilder.HttpClientConfigCallback() {
-      @Override
-      public HttpAsyncClientBuilder customizeHttpClient(HttpAsyncClientBuilder httpClientBuilder) {
-        return httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-      }
-    });
-    return builder;
+    return ElasticsearchClients.builder(url, username, password);
+  }
+
+  /**
+   * @return the Elasticsearch REST client shared by the retrievers with the same URL and credentials,
+   * it must not be closed, or the client given to this retriever.
+   */
+  public RestHighLevelClient getClient() {
+    return client != null ? client : ElasticsearchClients.get(url, username, password);
   }
 
   /**
@@ -111,22 +218,180 @@ public class Retriever {
    * @throws IOException
    */
   public SearchResponse search(@Nonnull String buildID, @CheckForNull String nodeID) throws IOException {
-    try (RestHighLevelClient client = new RestHighLevelClient(getBuilder())) {
-      final Scroll scroll = new Scroll(DEFAULT_TIMEVALUE);
-      SearchRequest searchRequest = new SearchRequest(index);
-      searchRequest.scroll(scroll);
-      SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-      searchSourceBuilder.size(PAGE_SIZE);
-      searchSourceBuilder.sort(new FieldSortBuilder(TIMESTAMP).order(SortOrder.ASC));
-      if (StringUtils.isBlank(nodeID)) {
-        searchSourceBuilder.query(matchQuery(JOB_ID, buildID));
-      } else {
-        searchSourceBuilder.query(boolQuery().must(matchQuery(JOB_ID, buildID)).must(matchQuery(JOB_NODE, nodeID)));
-      }
-      searchRequest.source(searchSourceBuilder);
+    final Scroll scroll = new Scroll(DEFAULT_TIMEVALUE);
+    SearchRequest searchRequest = new SearchRequest(index);
+    searchRequest.scroll(scroll);
+    searchRequest.source(newSearchSource(buildID, nodeID, PAGE_SIZE));
+
+    return getClient().search(searchRequest, RequestOptions.DEFAULT);
+  }
+
+  /**
+   * Opens a point in time of the index, the searches on it see the log lines indexed until now.
+   * It must be closed with {@link #closePointInTime(String)}.
+   *
+   * @return the point in time ID.
+   * @throws IOException
+   */
+  public String openPointInTime() throws IOException {
+    OpenPointInTimeRequest request = new OpenPointInTimeRequest(index).keepAlive(POINT_IN_TIME_KEEP_ALIVE);
+    return getClient().openPointInTime(request, RequestOptions.DEFAULT).getPointInTimeId();
+  }
 
-      return client.search(searchRequest, RequestOptions.DEFAULT);
+  /**
+   * Search a page of log lines of a build ID and Node ID in a point in time.
+   * The pages are consistent between them, and the point in time is kept open only between two pages.
+   *
+   * @param pointInTimeId point in time ID, the response contains the ID to use in the next page
+   *                      ({@link SearchResponse#pointInTimeId()}).
+   * @param buildID       build ID to search for the logs.
+   * @param nodeID        node ID to search for the logs, null to search the logs of the whole build.
+   * @param searchAfter   sort values of the last line of the previous page, null to request the first page.
+   * @param size          max number of log lines of the page.
+   * @return A page with log lines the results of the search.
+   * @throws IOException
+   */
+  public SearchResponse searchAfter(@Nonnull String pointInTimeId, @Nonnull String buildID,
+                                    @CheckForNull String nodeID, @CheckForNull Object[] searchAfter, int size)
+    throws IOException {
+    return searchAfter(pointInTimeId, buildID, nodeID, searchAfter, size, null);
+  }
+
+  /**
+   * Search a page of log lines of a slice of a point in time, the slices split the log lines by shard and document,
+   * so every slice can be read in parallel. The lines of every slice are sorted by timestamp and sequence number.
+   *
+   * @param pointInTimeId point in time ID.
+   * @param buildID       build ID to search for the logs.
+   * @param nodeID        node ID to search for the logs, null to search the logs of the whole build.
+   * @param searchAfter   sort values of the last line of the previous page of the slice, null to request the first
+   *                      page.
+   * @param size          max number of log lines of the page.
+   * @param slice         number of the slice, from 0 to slices - 1.
+   * @param slices        number of slices.
+   * @return A page with log lines of the slice.
+   * @throws IOException
+   */
+  public SearchResponse searchSlice(@Nonnull String pointInTimeId, @Nonnull String buildID,
+                                    @CheckForNull String nodeID, @CheckForNull Object[] searchAfter, int size,
+                                    int slice, int slices) throws IOException {
+    return searchAfter(pointInTimeId, buildID, nodeID, searchAfter, size, new SliceBuilder(slice, slices));
+  }
+
+  private SearchResponse searchAfter(@Nonnull String pointInTimeId, @Nonnull String buildID,
+                                     @CheckForNull String nodeID, @CheckForNull Object[] searchAfter, int size,
+                                     @CheckForNull SliceBuilder slice) throws IOException {
+    SearchRequest searchRequest = newPointInTimeRequest(pointInTimeId, buildID, nodeID, searchAfter, size, slice);
+    return getClient().search(searchRequest, RequestOptions.DEFAULT);
+  }
+
+  /**
+   * Search the first page of log lines of many nodes of a build in a point in time with one multi search request.
+   *
+   * @param pointInTimeId point in time ID.
+   * @param buildID       build ID to search for the logs.
+   * @param nodeIDs       node IDs to search for the logs.
+   * @param size          max number of log lines of every page.
+   * @return the first page of every node, in the same order as the node IDs.
+   * @throws IOException
+   */
+  public MultiSearchResponse firstPages(@Nonnull String pointInTimeId, @Nonnull String buildID,
+                                        @Nonnull List<String> nodeIDs, int size) throws IOException {
+    MultiSearchRequest request = new MultiSearchRequest();
+    for (String nodeID : nodeIDs) {
+      request.add(newPointInTimeRequest(pointInTimeId, buildID, nodeID, null, size, null));
+    }
+    return getClient().msearch(request, RequestOptions.DEFAULT);
+  }
+
+  private SearchRequest newPointInTimeRequest(@Nonnull String pointInTimeId, @Nonnull String buildID,
+                                              @CheckForNull String nodeID, @CheckForNull Object[] searchAfter,
+                                              int size, @CheckForNull SliceBuilder slice) {
+    // the point in time adds the shard and document as tiebreaker of the sort
+    SearchSourceBuilder searchSourceBuilder = newSearchSource(buildID, nodeID, size);
+    searchSourceBuilder.pointInTimeBuilder(
+      new PointInTimeBuilder(pointInTimeId).setKeepAlive(POINT_IN_TIME_KEEP_ALIVE));
+    if (searchAfter != null) {
+      searchSourceBuilder.searchAfter(searchAfter);
+    }
+    if (slice != null) {
+      searchSourceBuilder.slice(slice);
+    }
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.source(searchSourceBuilder);
+    return searchRequest;
+  }
+
+  /**
+   * Counts the log lines of a build ID and Node ID.
+   *
+   * @param buildID build ID to search for the logs.
+   * @param nodeID  node ID to search for the logs, null to count the logs of the whole build.
+   * @return number of log lines.
+   * @throws IOException
+   */
+  public long count(@Nonnull String buildID, @CheckForNull String nodeID) throws IOException {
+    CountRequest countRequest = new CountRequest(index).query(newQuery(buildID, nodeID));
+    return getClient().count(countRequest, RequestOptions.DEFAULT).getCount();
+  }
+
+  /**
+   * Closes a point in time to release its resources in Elasticsearch.
+   *
+   * @param pointInTimeId point in time ID.
+   * @return the object with the result.
+   * @throws IOException
+   */
+  public ClearScrollResponse closePointInTime(@Nonnull String pointInTimeId) throws IOException {
+    return getClient().closePointInTime(new ClosePointInTimeRequest(pointInTimeId), RequestOptions.DEFAULT);
+  }
+
+  /**
+   * @param sortValues sort values of a log line.
+   * @return the timestamp of the log line in epoch milliseconds.
+   */
+  public static long timestampMillis(@Nonnull Object[] sortValues) {
+    return TimeUnit.NANOSECONDS.toMillis(((Number) sortValues[0]).longValue());
+  }
+
+  /**
+   * @return the query of the log lines of a build and node, sorted by timestamp and sequence number,
+   * with only the fields of the source needed to show them.
+   */
+  private SearchSourceBuilder newSearchSource(@Nonnull String buildID, @CheckForNull String nodeID, int size) {
+    SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+    searchSourceBuilder.size(size);
+    // the timestamps of the date and date_nanos fields are sorted in nanoseconds, see timestampMillis
+    searchSourceBuilder.sort(new FieldSortBuilder(TIMESTAMP).order(SortOrder.ASC).setNumericType("date_nanos"));
+    // the events indexed before the sequence number was added do not have the field
+    searchSourceBuilder.sort(new FieldSortBuilder(EVENT_SEQUENCE).order(SortOrder.ASC).unmappedType("long"));
+    searchSourceBuilder.query(newQuery(buildID, nodeID));
+    searchSourceBuilder.fetchSource(SOURCE_FIELDS, null);
+    return searchSourceBuilder;
+  }
+
+  /**
+   * @return the query of the log lines of a build and node, in the time range of the retriever.
+   */
+  private QueryBuilder newQuery(@Nonnull String buildID, @CheckForNull String nodeID) {
+    // filter context, the lines are sorted so the score is not needed, and the filters are cached.
+    // On keyword fields the match queries are term queries, the other mappings still match the whole key.
+    BoolQueryBuilder query = boolQuery().filter(matchQuery(JOB_ID, buildID).operator(Operator.AND));
+    if (StringUtils.isNotBlank(nodeID)) {
+      query.filter(matchQuery(JOB_NODE, nodeID).operator(Operator.AND));
+    }
+    // the can match phase skips the shards whose timestamps are out of the range
+    if (from > 0 || to > 0) {
+      RangeQueryBuilder range = rangeQuery(TIMESTAMP).format("epoch_millis");
+      if (from > 0) {
+        range.gte(from);
+      }
+      if (to > 0) {
+        range.lte(to);
+      }
+      query.filter(range);
     }
+    return query;
   }
 
   /**
@@ -151,9 +416,7 @@ public class Retriever {
   public SearchResponse next(@Nonnull String scrollId, @Nonnull TimeValue timeValueSeconds) throws IOException {
     SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
     scrollRequest.scroll(timeValueSeconds);
-    try (RestHighLevelClient client = new RestHighLevelClient(getBuilder())) {
-      return client.scroll(scrollRequest, RequestOptions.DEFAULT);
-    }
+    return getClient().scroll(scrollRequest, RequestOptions.DEFAULT);
   }
 
   /**
@@ -166,9 +429,84 @@ public class Retriever {
   public ClearScrollResponse clear(@Nonnull String scrollId) throws IOException {
     ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
     clearScrollRequest.addScrollId(scrollId);
-    try (RestHighLevelClient client = new RestHighLevelClient(getBuilder())) {
-      return client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+    return getClient().clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+  }
+
+  /**
+   * Installs the templates of the log indices, a component template with the mappings and settings of the fields
+   * used to retrieve the logs, and an index template of data streams that uses it.
+   * The job fields are keywords, the message has no norms, the annotations are not indexed,
+   * and the indices are sorted by build and timestamp. The templates only apply to the new indices.
+   *
+   * @param indexPattern index patterns of the log indices, separated by commas.
+   * @throws IllegalArgumentException if an index pattern is not specific to Jenkins.
+   * @throws IOException
+   */
+  public void putTemplates(@Nonnull String indexPattern) throws IOException {
+    String error = templatePatternError(indexPattern);
+    if (error != null) {
+      throw new IllegalArgumentException(error);
+    }
+    String timestampType = Boolean.getBoolean(TimestampFormatter.MICROSECONDS_PROPERTY) ? "date_nanos" : "date";
+    XContentBuilder component = XContentFactory.jsonBuilder();
+    component.startObject().startObject("template");
+    component.startObject("settings")
+             .array("index.sort.field", JOB_ID, TIMESTAMP)
+             .array("index.sort.order", "asc", "asc")
+             .endObject();
+    component.startObject("mappings").startObject("properties");
+    component.startObject(TIMESTAMP).field("type", timestampType).endObject();
+    component.startObject(MESSAGE).field("type", "text").field("norms", false).endObject();
+    component.startObject(ANNOTATIONS).field("type", "object").field("enabled", false).endObject();
+    component.startObject("event").startObject("properties");
+    component.startObject("sequence").field("type", "long").endObject();
+    component.endObject().endObject();
+    component.startObject("job").startObject("properties");
+    for (String field : new String[]{JOB_ID, JOB_NODE, JOB_BUILD, JOB_NAME, JOB_URL}) {
+      component.startObject(field.substring("job.".length())).field("type", "keyword").endObject();
+    }
+    component.endObject().endObject();
+    component.endObject().endObject();
+    component.endObject().endObject();
+
+    XContentBuilder indexTemplate = XContentFactory.jsonBuilder();
+    indexTemplate.startObject()
+                 .array("index_patterns", StringUtils.stripAll(StringUtils.split(indexPattern, ',')))
+                 .array("composed_of", TEMPLATE_NAME)
+                 .field("priority", TEMPLATE_PRIORITY)
+                 .startObject("data_stream").endObject()
+                 .endObject();
+
+    RestClient client = getClient().getLowLevelClient();
+    Request request = new Request("PUT", "/_component_template/" + TEMPLATE_NAME);
+    request.setJsonEntity(BytesReference.bytes(component).utf8ToString());
+    client.performRequest(request);
+    request = new Request("PUT", "/_index_template/" + TEMPLATE_NAME);
+    request.setJsonEntity(BytesReference.bytes(indexTemplate).utf8ToString());
+    client.performRequest(request);
+  }
+
+  /**
+   * The index template has a higher priority than the built-in <code>logs-*-*</code> template of Elasticsearch,
+   * a broad pattern like the default <code>logs-*</code> would change the data streams of every other source of logs.
+   * Every pattern must contain {@link #TEMPLATE_PATTERN_MARK} before its first wildcard,
+   * like <code>logs-jenkins-*</code>.
+   *
+   * @param indexPattern index patterns of the log indices, separated by commas.
+   * @return the error message if a pattern is not specific to Jenkins, null if every pattern is.
+   */
+  @CheckForNull
+  public static String templatePatternError(@Nonnull String indexPattern) {
+    for (String pattern : StringUtils.stripAll(StringUtils.split(indexPattern, ','))) {
+      int wildcard = pattern.indexOf('*');
+      String prefix = wildcard >= 0 ? pattern.substring(0, wildcard) : pattern;
+      if (!prefix.toLowerCase(Locale.ROOT).contains(TEMPLATE_PATTERN_MARK)) {
+        return "The index pattern " + pattern + " is not specific to Jenkins, the index template would override "
+               + "the built-in logs template of Elasticsearch for other data streams. Use a pattern with "
+               + TEMPLATE_PATTERN_MARK + " before the first wildcard, like logs-jenkins-*.";
+      }
     }
+    return null;
   }
 
   /**
@@ -180,10 +518,8 @@ public class Retriever {
   public boolean indexExists() throws IOException {
     boolean ret = false;
     if (StringUtils.isNotBlank(index)) {
-      try (RestHighLevelClient client = new RestHighLevelClient(getBuilder())) {
-        GetIndexRequest request = new GetIndexRequest(index);
-        ret = client.indices().exists(request, RequestOptions.DEFAULT);
-      }
+      GetIndexRequest request = new GetIndexRequest(index);
+      ret = getClient().indices().exists(request, RequestOptions.DEFAULT);
     }
     return ret;
   }
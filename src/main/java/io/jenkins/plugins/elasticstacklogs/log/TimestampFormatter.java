@@ -0,0 +1,108 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs.log;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Formats the timestamps of the events as ISO 8601 UTC dates (<code>2021-12-18T19:42:46.604Z</code>).
+ * The date and time until the seconds only change once per second, so they are formatted once and cached,
+ * and every timestamp only writes the fraction of second in a buffer that is reused.
+ * With microseconds precision the fraction has six digits, Elasticsearch keeps them only if the field is mapped
+ * as <code>date_nanos</code>, and the JVM clock has to support it (Java 9 or newer).
+ * The instances are not thread safe, every output stream has its own.
+ */
+public class TimestampFormatter {
+  public static final String MICROSECONDS_PROPERTY = TimestampFormatter.class.getName() + ".microseconds";
+  /**
+   * Formats the date until the seconds, it is used once per second.
+   */
+  private static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.")
+                                                                    .withZone(ZoneOffset.UTC);
+  private static final DateTimeFormatter MILLIS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+                                                                   .withZone(ZoneOffset.UTC);
+
+  @NonNull
+  private final Clock clock;
+  private final int digits;
+  @NonNull
+  private byte[] buffer = new byte[0];
+  private int prefixLength;
+  private long second = Long.MIN_VALUE;
+
+  /**
+   * Uses the system clock and the precision of the {@link #MICROSECONDS_PROPERTY} system property.
+   */
+  public TimestampFormatter() {
+    this(Clock.systemUTC(), Boolean.getBoolean(MICROSECONDS_PROPERTY));
+  }
+
+  /**
+   * @param clock        clock to get the current time.
+   * @param microseconds true to format the microseconds, false to format the milliseconds.
+   */
+  public TimestampFormatter(@NonNull Clock clock, boolean microseconds) {
+    this.clock = clock;
+    this.digits = microseconds ? 6 : 3;
+  }
+
+  /**
+   * Formats the current time.
+   *
+   * @return buffer with the timestamp encoded in ASCII, it is overwritten by the next call, its length is
+   * {@link #length()}.
+   */
+  @NonNull
+  public byte[] now() {
+    return format(clock.instant());
+  }
+
+  /**
+   * Formats a time.
+   *
+   * @return buffer with the timestamp encoded in ASCII, it is overwritten by the next call, its length is
+   * {@link #length()}.
+   */
+  @NonNull
+  public byte[] format(@NonNull Instant instant) {
+    long epochSecond = instant.getEpochSecond();
+    if (epochSecond != second) {
+      byte[] prefix = SECONDS.format(instant).getBytes(StandardCharsets.US_ASCII);
+      if (buffer.length != prefix.length + digits + 1) {
+        buffer = new byte[prefix.length + digits + 1];
+      }
+      System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+      buffer[buffer.length - 1] = 'Z';
+      prefixLength = prefix.length;
+      second = epochSecond;
+    }
+    int fraction = digits == 6 ? instant.getNano() / 1000 : instant.getNano() / 1000000;
+    for (int i = prefixLength + digits - 1; i >= prefixLength; i--) {
+      buffer[i] = (byte) ('0' + fraction % 10);
+      fraction /= 10;
+    }
+    return buffer;
+  }
+
+  /**
+   * @return length of the last timestamp formatted.
+   */
+  public int length() {
+    return buffer.length;
+  }
+
+  /**
+   * @return the time with milliseconds precision, it is thread safe.
+   */
+  @NonNull
+  public static String toString(long millis) {
+    return MILLIS.format(Instant.ofEpochMilli(millis));
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.input.AsyncInput;
+import io.jenkins.plugins.elasticstacklogs.input.Input;
+import io.jenkins.plugins.elasticstacklogs.input.OverflowPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the handoff of events between the build threads and the drainer of the async input.
+ */
+public class AsyncInputTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    int producers = 4;
+    int events = 10000;
+    CollectingInput delegate = new CollectingInput(null);
+    AsyncInput input = new AsyncInput(delegate, 128, OverflowPolicy.BLOCK, null, 0);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      String prefix = p + ":";
+      Thread thread = new Thread(() -> {
+        try {
+          for (int i = 0; i < events; i++) {
+            input.write(prefix + i + "\n");
+          }
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    input.close();
+
+    assertEquals(producers * events, delegate.events.size());
+    assertEquals(producers * events, input.getWritten());
+    assertEquals(0, input.getDropped());
+    int[] next = new int[producers];
+    for (String event : delegate.events) {
+      String[] parts = event.trim().split(":");
+      int producer = Integer.parseInt(parts[0]);
+      assertEquals(next[producer]++, Integer.parseInt(parts[1]));
+    }
+  }
+
+  @Test
+  public void testDropOldest() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    CollectingInput delegate = new CollectingInput(latch);
+    AsyncInput input = new AsyncInput(delegate, 4, OverflowPolicy.DROP_OLDEST, null, 0);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(input.write(i + "\n"));
+    }
+    latch.countDown();
+    input.close();
+
+    assertTrue(input.getDropped() > 0);
+    assertEquals(input.getEnqueued(), input.getWritten() + input.getDropped());
+    assertEquals("99\n", delegate.events.get(delegate.events.size() - 1));
+  }
+
+  @Test
+  public void testSpill() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    CollectingInput delegate = new CollectingInput(latch);
+    Path spill = folder.newFolder("async").toPath().resolve("spill");
+    AsyncInput input = new AsyncInput(delegate, 4, OverflowPolicy.SPILL, spill, 1024 * 1024);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(input.write(i + "\n"));
+    }
+    assertTrue(input.getSpilled() > 0);
+    assertTrue(Files.isDirectory(spill));
+    latch.countDown();
+    input.close();
+
+    assertEquals(100, delegate.events.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i + "\n", delegate.events.get(i));
+    }
+    // the spill is deleted once it is drained
+    assertFalse(Files.exists(spill));
+  }
+
+  @Test
+  public void testEncodedEvents() throws Exception {
+    CollectingInput delegate = new CollectingInput(null);
+    AsyncInput input = new AsyncInput(delegate, 4, OverflowPolicy.BLOCK, null, 0);
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    for (int i = 0; i < 10; i++) {
+      buffer.clear();
+      buffer.put((i + "\n" + i + "." + i + "\n").getBytes(StandardCharsets.UTF_8)).flip();
+      assertTrue(input.write(buffer));
+      assertFalse(buffer.hasRemaining());
+    }
+    input.close();
+
+    assertEquals(20, input.getWritten());
+    assertEquals(20, delegate.events.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i + "\n", delegate.events.get(2 * i));
+      assertEquals(i + "." + i + "\n", delegate.events.get(2 * i + 1));
+    }
+  }
+
+  /**
+   * Input that keeps the events, it waits for the latch before writing the first event.
+   */
+  private static class CollectingInput extends Input {
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch latch;
+
+    CollectingInput(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public boolean write(@NonNull String value) throws IOException {
+      if (latch != null) {
+        try {
+          latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      events.add(value);
+      return true;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the plugin, they are skipped unless the benchmark property is set.
+ * <code>mvn test -Dbenchmark -Dtest=BenchmarkRunner</code>
+ */
+public class BenchmarkRunner {
+
+  @Test
+  public void runBenchmarks() throws Exception {
+    Assume.assumeTrue(System.getProperty("benchmark") != null);
+    Options options = new OptionsBuilder().include(getClass().getPackage().getName() + "\\..*Benchmark")
+                                          .warmupIterations(3)
+                                          .measurementIterations(5)
+                                          .forks(1)
+                                          .shouldFailOnError(true)
+                                          .resultFormat(ResultFormatType.JSON)
+                                          .result("target/jmh-report.json")
+                                          .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import hudson.console.ConsoleNote;
+
+/**
+ * Compares the byte level scanner of {@link ConsoleNotes#encode(byte[], int, EventEncoder)} with the previous
+ * implementation that decodes the line to a String and searches the notes with {@link String#indexOf(String)}.
+ * Run it with {@link BenchmarkRunner}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConsoleNotesBenchmark {
+  private static final String NOTE = ConsoleNote.PREAMBLE_STR
+                                     + "AAAAlh+LCAAAAAAAAP9b85aBtbiIQTGjNKU4P0+vIKc0PTOvWK8kMze1uCQxtyC1SC8ExvbLL0llgABGJgZGLwaB3MycnMzi4My85FTXgvzkjJIiBjGN4JzSkpLUImcoEYD+YwU1gEmAHoMABEH+YXIAAAA="
+                                     + ConsoleNote.POSTAMBLE_STR;
+
+  @Param({ "plain", "notes" })
+  public String type;
+
+  private byte[] line;
+  private final EventEncoder encoder = new EventEncoder();
+
+  @Setup
+  public void setUp() {
+    String text;
+    if ("notes".equals(type)) {
+      text = NOTE + "[Pipeline] " + NOTE + "sh" + NOTE + " + mvn -B verify -Dmaven.test.failure.ignore=true" + NOTE;
+    } else {
+      text = "[INFO] Downloaded from central: https://repo.maven.apache.org/maven2/org/apache/maven/plugins/"
+             + "maven-surefire-plugin/3.0.0-M5/maven-surefire-plugin-3.0.0-M5.jar (41 kB at 1.2 MB/s)";
+    }
+    line = (text + "\n").getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public ByteBuffer bytes() {
+    encoder.begin();
+    ConsoleNotes.encode(line, line.length, encoder);
+    return encoder.end();
+  }
+
+  @Benchmark
+  public ByteBuffer string() {
+    encoder.begin();
+    encodeString(line, line.length, encoder);
+    return encoder.end();
+  }
+
+  /**
+   * Previous implementation of {@link ConsoleNotes#encode(byte[], int, EventEncoder)}.
+   */
+  private static void encodeString(byte[] b, int len, EventEncoder encoder) {
+    int eol = len;
+    while (eol > 0) {
+      byte c = b[eol - 1];
+      if (c == '\n' || c == '\r') {
+        eol--;
+      } else {
+        break;
+      }
+    }
+    String line = new String(b, 0, eol, StandardCharsets.UTF_8);
+    if (!line.contains(ConsoleNote.PREAMBLE_STR)) {
+      encoder.field("message", line);
+    } else {
+      StringBuilder buf = new StringBuilder();
+      List<Integer> positions = new ArrayList<>();
+      List<String> notes = new ArrayList<>();
+      int pos = 0;
+      while (true) {
+        int preamble = line.indexOf(ConsoleNote.PREAMBLE_STR, pos);
+        if (preamble == -1) {
+          break;
+        }
+        int endOfPreamble = preamble + ConsoleNote.PREAMBLE_STR.length();
+        int postamble = line.indexOf(ConsoleNote.POSTAMBLE_STR, endOfPreamble);
+        if (postamble == -1) {
+          break;
+        }
+        buf.append(line, pos, preamble);
+        positions.add(buf.length());
+        notes.add(line.substring(endOfPreamble, postamble));
+        pos = postamble + ConsoleNote.POSTAMBLE_STR.length();
+      }
+      buf.append(line, pos, line.length());
+      encoder.field("message", buf);
+      encoder.beginArray("annotations");
+      for (int i = 0; i < notes.size(); i++) {
+        encoder.beginObject().field("position", positions.get(i)).field("note", notes.get(i)).endObject();
+      }
+      encoder.endArray();
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.junit.Test;
+import hudson.console.ConsoleNote;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test the log lines written from the source of the events.
+ */
+public class ConsoleNotesTest {
+
+  @Test
+  public void testWriteMessage() throws IOException {
+    assertEquals("Hello \u00e9\n", write("{\"message\":\"Hello \\u00e9\",\"job\":{\"id\":\"a\",\"node\":null}}"));
+  }
+
+  @Test
+  public void testWriteAnnotations() throws IOException {
+    String source = "{\"annotations\":[{\"position\":0,\"note\":\"A\"},{\"note\":\"B\",\"position\":5,\"x\":[1]}],"
+                    + "\"message\":\"Hello World\"}";
+    String expected = ConsoleNote.PREAMBLE_STR + "A" + ConsoleNote.POSTAMBLE_STR + "Hello" + ConsoleNote.PREAMBLE_STR
+                      + "B" + ConsoleNote.POSTAMBLE_STR + " World\n";
+    assertEquals(expected, write(source));
+  }
+
+  @Test
+  public void testWriteWithoutMessage() throws IOException {
+    assertEquals("\n", write("{\"@timestamp\":\"2021-12-18T19:42:46.604Z\"}"));
+  }
+
+  private static String write(String source) throws IOException {
+    StringWriter w = new StringWriter();
+    ConsoleNotes.write(w, new BytesArray(source));
+    return w.toString();
+  }
+}
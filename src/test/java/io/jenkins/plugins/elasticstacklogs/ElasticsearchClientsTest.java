@@ -0,0 +1,63 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.IOException;
+import io.jenkins.plugins.elasticstacklogs.log.ElasticsearchClients;
+import io.jenkins.plugins.elasticstacklogs.log.Retriever;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ElasticsearchClientsTest {
+  private static final String URL = "http://localhost:9200";
+
+  @After
+  public void tearDown() {
+    ElasticsearchClients.configure(ElasticsearchClients.DEFAULT_MAX_CONNECTIONS,
+                                   ElasticsearchClients.DEFAULT_KEEP_ALIVE_SECONDS
+                                  );
+  }
+
+  @Test
+  public void testSharedClient() {
+    RestHighLevelClient client = ElasticsearchClients.get(URL, "elastic", "changeme");
+    assertSame(client, ElasticsearchClients.get(URL, "elastic", "changeme"));
+    assertSame(client, new Retriever(URL, "elastic", "changeme", "logs-*").getClient());
+    assertNotSame(client, ElasticsearchClients.get(URL, "other", "changeme"));
+    assertEquals(2, ElasticsearchClients.size());
+  }
+
+  @Test
+  public void testPasswordChange() {
+    RestHighLevelClient client = ElasticsearchClients.get(URL, "elastic", "changeme");
+    RestHighLevelClient rotated = ElasticsearchClients.get(URL, "elastic", "other");
+    assertNotSame(client, rotated);
+    assertSame(rotated, ElasticsearchClients.get(URL, "elastic", "other"));
+    assertEquals(1, ElasticsearchClients.size());
+  }
+
+  @Test
+  public void testOwnClient() throws IOException {
+    RestHighLevelClient shared = ElasticsearchClients.get(URL, "elastic", "changeme");
+    try (RestHighLevelClient client = new RestHighLevelClient(ElasticsearchClients.builder(URL, "elastic", "other"))) {
+      assertSame(client, new Retriever(URL, "elastic", "other", "logs-*", client).getClient());
+    }
+    assertSame(shared, ElasticsearchClients.get(URL, "elastic", "changeme"));
+    assertEquals(1, ElasticsearchClients.size());
+  }
+
+  @Test
+  public void testInvalidate() {
+    RestHighLevelClient client = ElasticsearchClients.get(URL, "elastic", "changeme");
+    ElasticsearchClients.configure(5, 10);
+    assertEquals(0, ElasticsearchClients.size());
+    assertNotSame(client, ElasticsearchClients.get(URL, "elastic", "changeme"));
+    assertEquals(1, ElasticsearchClients.size());
+  }
+}
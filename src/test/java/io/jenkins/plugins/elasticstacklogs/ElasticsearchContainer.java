@@ -97,12 +97,31 @@ public class ElasticsearchContainer extends GenericContainer {
     }
   }
 
+  /**
+   * Adds log lines to a build in the index {@link #INDEX}.
+   *
+   * @param buildID build ID.
+   * @param from    number of the first line.
+   * @param to      number of the line after the last line.
+   * @throws IOException
+   */
+  public void addLines(String buildID, int from, int to) throws IOException {
+    try (RestHighLevelClient client = new RestHighLevelClient(getBuilder())) {
+      BulkRequest bulkRequest = new BulkRequest();
+      for (int n = from; n < to; n++) {
+        bulkRequest.add(newBulk(n, buildID));
+      }
+      bulkRequest.setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+      client.bulk(bulkRequest, RequestOptions.DEFAULT);
+    }
+  }
+
   private IndexRequest newBulk(int lineNumber, String buildID) throws IOException {
     return new IndexRequest(INDEX).source(XContentType.JSON, Retriever.JOB_BUILD, buildID, Retriever.TIMESTAMP,
                                           Retriever.now(), Retriever.JOB_NAME, JOB_NAME_VALUE, Retriever.JOB_URL,
                                           JOB_URL_VALUE, Retriever.JOB_ID, BuildInfo.getKey(JOB_URL_VALUE, buildID),
-                                          Retriever.JOB_NODE, lineNumber % 2 == 0 ? "1" : null, Retriever.MESSAGE,
-                                          "Line " + lineNumber
+                                          Retriever.JOB_NODE, lineNumber % 2 == 0 ? "1" : null,
+                                          Retriever.EVENT_SEQUENCE, lineNumber, Retriever.MESSAGE, "Line " + lineNumber
                                          );
   }
 }
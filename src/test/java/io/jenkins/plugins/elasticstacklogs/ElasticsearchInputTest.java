@@ -0,0 +1,147 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import io.jenkins.plugins.elasticstacklogs.input.ElasticsearchInput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the Elasticsearch input against an in-process HTTP server that mimics the _bulk API.
+ */
+public class ElasticsearchInputTest {
+  private static final String INDEX = "logs-jenkins-test";
+
+  private HttpServer server;
+  private final List<String> documents = new CopyOnWriteArrayList<>();
+  private final AtomicInteger bulkRequests = new AtomicInteger();
+  private final AtomicInteger rejectedRequests = new AtomicInteger();
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testBulk() throws IOException {
+    ElasticsearchInput input = newInput(5);
+    for (int i = 0; i < 8; i++) {
+      input.write("{\"message\":\"line " + i + "\"}\n");
+    }
+    String encoded = "{\"message\":\"line 8\"}\n{\"message\":\"line 9\"}\n";
+    input.write(ByteBuffer.wrap(encoded.getBytes(StandardCharsets.UTF_8)));
+    input.close();
+
+    assertEquals(10, documents.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals("{\"message\":\"line " + i + "\"}", documents.get(i));
+    }
+    assertEquals(2, bulkRequests.get());
+    assertEquals(10, input.getIndexed());
+    assertEquals(0, input.getFailed());
+  }
+
+  @Test
+  public void testRetryRejected() throws IOException {
+    rejectedRequests.set(1);
+    ElasticsearchInput input = newInput(5);
+    for (int i = 0; i < 5; i++) {
+      input.write("{\"message\":\"line " + i + "\"}\n");
+    }
+    input.close();
+
+    assertEquals(5, documents.size());
+    assertTrue(bulkRequests.get() >= 2);
+    assertEquals(5, input.getIndexed());
+    assertEquals(0, input.getFailed());
+  }
+
+  private ElasticsearchInput newInput(int bulkActions) {
+    String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    return new ElasticsearchInput(url, "elastic", "changeme", INDEX, bulkActions, 5, 60, 0, 3);
+  }
+
+  /**
+   * Answers the product check of the client and the _bulk requests, the items of the first
+   * {@link #rejectedRequests} bulk requests are rejected with a 429 status.
+   */
+  private void handle(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    String response;
+    if (path.endsWith("/_bulk")) {
+      response = bulk(read(exchange.getRequestBody()));
+    } else {
+      response = "{\"name\":\"test\",\"cluster_name\":\"test\",\"cluster_uuid\":\"test\",\"version\":{\"number\":\"7.16.2\","
+                 + "\"build_flavor\":\"default\",\"build_type\":\"docker\",\"build_hash\":\"test\","
+                 + "\"build_date\":\"2021-12-18T19:42:46.604893745Z\",\"build_snapshot\":false,"
+                 + "\"lucene_version\":\"8.10.1\",\"minimum_wire_compatibility_version\":\"6.8.0\","
+                 + "\"minimum_index_compatibility_version\":\"6.0.0-beta1\"},\"tagline\":\"You Know, for Search\"}";
+    }
+    byte[] body = response.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.getResponseHeaders().add("X-Elastic-Product", "Elasticsearch");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private String bulk(String request) {
+    bulkRequests.incrementAndGet();
+    boolean reject = rejectedRequests.getAndDecrement() > 0;
+    String[] lines = request.split("\n");
+    StringBuilder items = new StringBuilder();
+    for (int i = 0; i + 1 < lines.length; i += 2) {
+      int id = documents.size();
+      if (items.length() > 0) {
+        items.append(',');
+      }
+      if (reject) {
+        items.append("{\"create\":{\"_index\":\"").append(INDEX).append("\",\"_type\":\"_doc\",\"_id\":\"").append(id)
+             .append("\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\","
+                     + "\"reason\":\"rejected execution\"}}}");
+      } else {
+        documents.add(lines[i + 1]);
+        items.append("{\"create\":{\"_index\":\"").append(INDEX).append("\",\"_type\":\"_doc\",\"_id\":\"").append(id)
+             .append("\",\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},")
+             .append("\"_seq_no\":").append(id).append(",\"_primary_term\":1,\"status\":201}}");
+      }
+    }
+    return "{\"took\":1,\"errors\":" + reject + ",\"items\":[" + items + "]}";
+  }
+
+  private static String read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import hudson.console.ConsoleNote;
+import static org.junit.Assert.assertEquals;
+
+public class EventEncoderTest {
+
+  @Test
+  public void testFields() {
+    EventEncoder encoder = new EventEncoder();
+    encoder.begin().field("message", "hello").field("job.build", "1").field("count", -42L).field("node", null);
+    assertEquals("{\"message\":\"hello\",\"job.build\":\"1\",\"count\":-42,\"node\":null}\n", toString(encoder.end()));
+  }
+
+  @Test
+  public void testEncodedFields() {
+    EventEncoder encoder = new EventEncoder();
+    byte[] fields = encoder.begin().field("job.name", "folder/\"job\"").field("job.build", "1").getFields();
+
+    encoder.begin().fields(fields).field("message", "line 1");
+    assertEquals("{\"job.name\":\"folder/\\\"job\\\"\",\"job.build\":\"1\",\"message\":\"line 1\"}\n",
+                 toString(encoder.end())
+                );
+    encoder.begin().field("message", "line 2").fields(fields);
+    assertEquals("{\"message\":\"line 2\",\"job.name\":\"folder/\\\"job\\\"\",\"job.build\":\"1\"}\n",
+                 toString(encoder.end())
+                );
+  }
+
+  @Test
+  public void testEscaping() {
+    EventEncoder encoder = new EventEncoder();
+    encoder.begin().field("message", "quote\" backslash\\ tab\t cr\r lf\n bell\u0007 slash/");
+    assertEquals("{\"message\":\"quote\\\" backslash\\\\ tab\\t cr\\r lf\\n bell\\u0007 slash/\"}\n",
+                 toString(encoder.end())
+                );
+  }
+
+  @Test
+  public void testUnicode() {
+    EventEncoder encoder = new EventEncoder();
+    encoder.begin().field("message", "\u00e9\u20ac\uD83D\uDE00");
+    assertEquals("{\"message\":\"\u00e9\u20ac\uD83D\uDE00\"}\n", toString(encoder.end()));
+
+    encoder.begin().field("message", "a\uD83Db\uDE00");
+    assertEquals("{\"message\":\"a\uFFFDb\uFFFD\"}\n", toString(encoder.end()));
+  }
+
+  @Test
+  public void testBufferReused() {
+    EventEncoder encoder = new EventEncoder();
+    StringBuilder longLine = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      longLine.append("0123456789");
+    }
+    encoder.begin().field("message", longLine);
+    assertEquals(longLine.length() + 15, encoder.end().remaining());
+
+    encoder.begin().field("message", "short");
+    assertEquals("{\"message\":\"short\"}\n", toString(encoder.end()));
+  }
+
+  @Test
+  public void testConsoleNotes() {
+    EventEncoder encoder = new EventEncoder();
+    byte[] line = ("Running " + ConsoleNote.PREAMBLE_STR + "note1" + ConsoleNote.POSTAMBLE_STR + "step\r\n")
+      .getBytes(StandardCharsets.UTF_8);
+    encoder.begin();
+    ConsoleNotes.encode(line, line.length, encoder);
+    assertEquals("{\"message\":\"Running step\",\"annotations\":[{\"position\":8,\"note\":\"note1\"}]}\n",
+                 toString(encoder.end())
+                );
+
+    line = "no notes\n".getBytes(StandardCharsets.UTF_8);
+    encoder.begin();
+    ConsoleNotes.encode(line, line.length, encoder);
+    assertEquals("{\"message\":\"no notes\"}\n", toString(encoder.end()));
+  }
+
+  @Test
+  public void testConsoleNotesPositions() {
+    EventEncoder encoder = new EventEncoder();
+    String note = ConsoleNote.PREAMBLE_STR + "n1" + ConsoleNote.POSTAMBLE_STR;
+    byte[] line = ("\u00e9\uD83D\uDE00" + note + "a" + note + "b" + ConsoleNote.PREAMBLE_STR + "broken\n")
+      .getBytes(StandardCharsets.UTF_8);
+    encoder.begin();
+    ConsoleNotes.encode(line, line.length, encoder);
+    // the positions are counted in chars of the message like String.length()
+    assertEquals("{\"message\":\"\u00e9\uD83D\uDE00ab\\u001b[8mha:broken\",\"annotations\":["
+                 + "{\"position\":3,\"note\":\"n1\"},{\"position\":4,\"note\":\"n1\"}]}\n",
+                 toString(encoder.end())
+                );
+  }
+
+  @Test
+  public void testMalformedUtf8() {
+    EventEncoder encoder = new EventEncoder();
+    byte[] line = { 'a', (byte) 0xC3, 'b', (byte) 0xED, (byte) 0xA0, (byte) 0x80, (byte) 0xE2, (byte) 0x82 };
+    encoder.begin().field("message", line, 0, line.length);
+    assertEquals("{\"message\":\"a\uFFFDb\uFFFD\uFFFD\uFFFD\uFFFD\uFFFD\"}\n", toString(encoder.end()));
+  }
+
+  private static String toString(ByteBuffer buffer) {
+    return new String(buffer.array(), buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+  }
+}
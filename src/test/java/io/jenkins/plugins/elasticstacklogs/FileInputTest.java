@@ -0,0 +1,107 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import io.jenkins.plugins.elasticstacklogs.input.FileInput;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the buffered writes and the rolling of the file input.
+ */
+public class FileInputTest {
+
+  private Path workdir;
+
+  @Before
+  public void setUp() throws IOException {
+    workdir = Files.createTempDirectory("file-input");
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(workdir.toFile());
+  }
+
+  @Test
+  public void testFlush() throws IOException, InterruptedException {
+    Path file = workdir.resolve("flush");
+    FileInput input = new FileInput(file.toString());
+    input.write("foo\n");
+    input.flush();
+    assertEquals("foo\n", read(file));
+    input.write("bar\n");
+    Thread.sleep(3000);
+    assertEquals("foo\nbar\n", read(file));
+  }
+
+  @Test
+  public void testRolling() throws IOException {
+    Path file = workdir.resolve("roll");
+    FileInput input = new FileInput(file.toString(), 8, 2);
+    for (String value : Arrays.asList("line1\n", "line2\n", "line3\n", "line4\n")) {
+      input.write(value);
+      input.flush();
+    }
+    assertEquals("line4\n", read(file));
+    assertEquals("line3\n", read(workdir.resolve("roll.1")));
+    assertEquals("line2\n", read(workdir.resolve("roll.2")));
+    assertFalse(Files.exists(workdir.resolve("roll.3")));
+  }
+
+  @Test
+  public void testReopen() throws Exception {
+    Path file = workdir.resolve("reopen");
+    FileInput input = new FileInput(file.toString());
+    input.write("foo\n");
+    input.flush();
+    Files.delete(file);
+    // the flusher checks every second if the file was deleted
+    Thread.sleep(2000);
+    input.write("bar\n");
+    input.flush();
+    assertTrue(Files.exists(file));
+    assertEquals("bar\n", read(file));
+  }
+
+  @Test
+  public void testWriteEncodedEvents() throws IOException {
+    Path file = workdir.resolve("encoded");
+    FileInput input = new FileInput(file.toString());
+    input.write(ByteBuffer.wrap("foo\nbar\n".getBytes(StandardCharsets.UTF_8)));
+    input.write(Arrays.asList("baz\n", "qux\n"));
+    input.flush();
+    assertEquals("foo\nbar\nbaz\nqux\n", read(file));
+  }
+
+  @Test
+  public void testSharedWriter() throws IOException {
+    Path file = workdir.resolve("shared");
+    FileInput input = new FileInput(file.toString());
+    FileInput other = new FileInput(file.toString());
+    input.write("foo\n");
+    input.close();
+    assertEquals("foo\n", read(file));
+    other.write("bar\n");
+    other.flush();
+    assertEquals("foo\nbar\n", read(file));
+    other.close();
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.config.InputConf;
+import io.jenkins.plugins.elasticstacklogs.config.InputRegistry;
+import io.jenkins.plugins.elasticstacklogs.input.Input;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the reference counting of the shared inputs.
+ */
+public class InputRegistryTest {
+
+  @After
+  public void tearDown() {
+    InputRegistry.invalidate(null);
+  }
+
+  @Test
+  public void testSharedInput() throws IOException {
+    CountingInputConf conf = new CountingInputConf("a");
+    Input input = InputRegistry.acquire(conf);
+    assertSame(input, InputRegistry.acquire(new CountingInputConf("a")));
+    assertEquals(1, conf.created.get());
+    InputRegistry.release(conf);
+    InputRegistry.release(conf);
+    assertEquals(1, InputRegistry.size());
+    assertEquals(0, ((CountingInput) input).closed.get());
+  }
+
+  @Test
+  public void testConfigurationChange() throws IOException {
+    CountingInputConf confA = new CountingInputConf("a");
+    CountingInputConf confB = new CountingInputConf("b");
+    CountingInput inputA = (CountingInput) InputRegistry.acquire(confA);
+    CountingInput inputB = (CountingInput) InputRegistry.acquire(confB);
+    assertNotSame(inputA, inputB);
+    // the builds of both configurations run at the same time
+    InputRegistry.release(confA);
+    assertEquals(0, inputA.closed.get());
+    assertSame(inputA, InputRegistry.acquire(confA));
+    assertEquals(1, confA.created.get());
+    InputRegistry.release(confA);
+    assertEquals(2, InputRegistry.size());
+
+    // the configuration is saved
+    InputRegistry.invalidate(confB);
+    assertEquals(1, inputA.closed.get());
+    assertEquals(0, inputB.closed.get());
+    assertEquals(1, InputRegistry.size());
+
+    InputRegistry.release(confB);
+    InputRegistry.invalidate(confA);
+    assertEquals(1, inputB.closed.get());
+    assertEquals(0, InputRegistry.size());
+  }
+
+  @Test
+  public void testStaleInputClosedOnRelease() throws IOException {
+    CountingInputConf confA = new CountingInputConf("a");
+    CountingInput inputA = (CountingInput) InputRegistry.acquire(confA);
+    InputRegistry.invalidate(new CountingInputConf("b"));
+    assertEquals(0, inputA.closed.get());
+    InputRegistry.release(confA);
+    assertEquals(1, inputA.closed.get());
+    assertEquals(0, InputRegistry.size());
+  }
+
+  @Test
+  public void testSlowInputDoesNotBlockOthers() throws Exception {
+    CountingInputConf slow = new CountingInputConf("slow");
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Input> first = executor.submit(() -> InputRegistry.acquire(slow));
+      assertTrue(slow.creating.await(10, TimeUnit.SECONDS));
+      Future<Input> second = executor.submit(() -> InputRegistry.acquire(new CountingInputConf("slow")));
+      // other configurations are not blocked while the slow input is created
+      CountingInputConf other = new CountingInputConf("other");
+      InputRegistry.acquire(other);
+      InputRegistry.release(other);
+      assertFalse(first.isDone());
+      assertFalse(second.isDone());
+      slow.ready.countDown();
+      assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+      assertEquals(1, slow.created.get());
+      InputRegistry.release(slow);
+      InputRegistry.release(slow);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static class CountingInputConf extends InputConf {
+    private final String name;
+    private final AtomicInteger created = new AtomicInteger();
+    private final CountDownLatch creating = new CountDownLatch(1);
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    CountingInputConf(String name) {
+      this.name = name;
+    }
+
+    @NonNull
+    @Override
+    public Input get() throws IOException {
+      created.incrementAndGet();
+      if (name.equals("slow")) {
+        creating.countDown();
+        try {
+          ready.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      return new CountingInput();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof CountingInputConf && name.equals(((CountingInputConf) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name);
+    }
+  }
+
+  private static class CountingInput extends Input {
+    private final AtomicInteger closed = new AtomicInteger();
+
+    @Override
+    public boolean write(@NonNull String value) {
+      return true;
+    }
+
+    @Override
+    public void close() {
+      closed.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import io.jenkins.plugins.elasticstacklogs.log.BuildInfo;
+import io.jenkins.plugins.elasticstacklogs.log.Retriever;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the log text that reads the log lines from Elasticsearch page by page.
+ */
+public class LogBufferTest {
+
+  @Rule
+  public ElasticsearchContainer esContainer = new ElasticsearchContainer();
+  private String expected;
+
+  @Before
+  public void setUp() throws Exception {
+    esContainer.createFilebeatIndex();
+    PageCache.invalidate();
+    StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      lines.append("Line ").append(i).append('\n');
+    }
+    expected = lines.toString();
+  }
+
+  @Test
+  public void testReadPages() throws IOException {
+    LogBuffer buffer = newLogBuffer(ElasticsearchContainer.INDEX, 7, true);
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals(expected, IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    assertEquals(expected.length(), buffer.length());
+  }
+
+  @Test
+  public void testStartOffset() throws IOException {
+    LogBuffer buffer = newLogBuffer(ElasticsearchContainer.INDEX, 10, true);
+    int start = expected.indexOf("Line 42");
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals(start, in.skip(start));
+      assertEquals(expected.substring(start), IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testProgressiveRead() throws IOException {
+    LogBuffer buffer = newLogBuffer(ElasticsearchContainer.INDEX, 30, false);
+    long start = buffer.length();
+    assertEquals(expected.length(), start);
+    esContainer.addLines("2", 100, 105);
+    StringBuilder newLines = new StringBuilder();
+    for (int i = 100; i < 105; i++) {
+      newLines.append("Line ").append(i).append('\n');
+    }
+    buffer = newLogBuffer(ElasticsearchContainer.INDEX, 30, false);
+    assertEquals(start + newLines.length(), buffer.length());
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals(start, in.skip(start));
+      assertEquals(newLines.toString(), IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testPageCache() throws IOException {
+    LogBuffer buffer = newLogBuffer(ElasticsearchContainer.INDEX, 40, true);
+    long hits = PageCache.getHits();
+    long misses = PageCache.getMisses();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    assertEquals(hits, PageCache.getHits());
+    assertEquals(misses + 3, PageCache.getMisses());
+    assertEquals(expected.length(), PageCache.size());
+
+    buffer = newLogBuffer(ElasticsearchContainer.INDEX, 40, true);
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals(expected, IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+    assertEquals(hits + 3, PageCache.getHits());
+    assertEquals(misses + 3, PageCache.getMisses());
+  }
+
+  @Test
+  public void testCachedPageInAnotherPointInTime() throws IOException {
+    LogBuffer buffer = newLogBuffer(ElasticsearchContainer.INDEX, 40, true);
+    try (InputStream in = buffer.newInputStream()) {
+      assertTrue(in.read() >= 0);
+    }
+    long hits = PageCache.getHits();
+    // the first page is cached, the next ones are read from a new point in time after it
+    buffer = newLogBuffer(ElasticsearchContainer.INDEX, 40, true);
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals(expected, IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+    assertEquals(hits + 1, PageCache.getHits());
+  }
+
+  @Test
+  public void testWithoutTiebreaker() {
+    Object[] sortValues = {1L, 2L, 3L};
+    assertArrayEquals(new Object[]{1L, 2L, Long.MAX_VALUE}, LogBuffer.withoutTiebreaker(sortValues));
+    assertEquals(3L, sortValues[2]);
+    assertNull(LogBuffer.withoutTiebreaker(null));
+  }
+
+  @Test
+  public void testRunningLogNotCached() throws IOException {
+    LogBuffer buffer = newLogBuffer(ElasticsearchContainer.INDEX, 40, false);
+    long misses = PageCache.getMisses();
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals(expected, IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+    assertEquals(0, PageCache.size());
+    assertEquals(misses, PageCache.getMisses());
+  }
+
+  @Test
+  public void testIndexNotFound() throws IOException {
+    LogBuffer buffer = newLogBuffer("not-found-*", 10, true);
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals(LogBuffer.INDEX_NOT_FOUND, IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testPrefetch() throws IOException {
+    Retriever retriever = new Retriever(esContainer.getUrl(), ElasticsearchContainer.USER_NAME,
+                                        ElasticsearchContainer.PASSWORD, ElasticsearchContainer.INDEX
+    );
+    String buildKey = BuildInfo.getKey(ElasticsearchContainer.JOB_URL_VALUE, "2");
+    LogBuffer.prefetch(retriever, buildKey, Arrays.asList("1", "2"));
+    long misses = PageCache.getMisses();
+
+    StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < 100; i += 2) {
+      lines.append("Line ").append(i).append('\n');
+    }
+    // the log is shorter than the page read in advance, it is read from the cache
+    LogBuffer buffer = new LogBuffer(retriever, buildKey, "1", 1000, true, true, 0);
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals(lines.toString(), IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+    assertEquals(misses + 1, PageCache.getMisses());
+    buffer = new LogBuffer(retriever, buildKey, "2", 1000, true, true, 0);
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals("", IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+    assertEquals(misses + 2, PageCache.getMisses());
+  }
+
+  @Test
+  public void testSlicedRead() throws IOException {
+    LogBuffer buffer = newLogBuffer(ElasticsearchContainer.INDEX, 7, true, 3);
+    try (InputStream in = buffer.newInputStream()) {
+      assertTrue(in instanceof SlicedInputStream);
+      assertEquals(expected, IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    int start = expected.indexOf("Line 42");
+    try (InputStream in = buffer.newInputStream()) {
+      assertEquals(start, in.skip(start));
+      assertEquals(expected.substring(start), IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+  }
+
+  private LogBuffer newLogBuffer(String index, int pageSize, boolean completed) throws IOException {
+    return newLogBuffer(index, pageSize, completed, 0);
+  }
+
+  private LogBuffer newLogBuffer(String index, int pageSize, boolean completed, int slices) throws IOException {
+    Retriever retriever = new Retriever(esContainer.getUrl(), ElasticsearchContainer.USER_NAME,
+                                        ElasticsearchContainer.PASSWORD, index
+    );
+    return new LogBuffer(retriever, BuildInfo.getKey(ElasticsearchContainer.JOB_URL_VALUE, "2"), null, pageSize,
+                         completed, completed, slices
+    );
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kohsuke.stapler.framework.io.ByteBuffer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the disk cache of the completed build logs.
+ */
+public class LogCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = folder.newFolder("cache").toPath();
+  }
+
+  @Test
+  public void testPutAndGet() throws IOException {
+    LogCache cache = new LogCache(dir, 1024 * 1024);
+    String text = log(1000);
+    assertNull(cache.get("build", null));
+
+    ByteBuffer cached = cache.put("build", null, newBuffer(text));
+    assertNotNull(cached);
+    assertEquals(text.length(), cached.length());
+    assertEquals(text, read(cached));
+
+    cached = cache.get("build", null);
+    assertNotNull(cached);
+    assertEquals(text.length(), cached.length());
+    assertEquals(text, read(cached));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    cached.writeTo(out);
+    assertEquals(text, new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+    assertNull(cache.get("build", "1"));
+    assertNull(cache.get("other", null));
+  }
+
+  @Test
+  public void testEmptyLogIsNotCached() throws IOException {
+    LogCache cache = new LogCache(dir, 1024 * 1024);
+    assertNull(cache.put("build", null, newBuffer("")));
+    assertNull(cache.get("build", null));
+    File[] files = dir.toFile().listFiles();
+    assertNotNull(files);
+    assertEquals(0, files.length);
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() throws IOException {
+    LogCache cache = new LogCache(dir, Long.MAX_VALUE);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 3; i++) {
+      assertNotNull(cache.put("build" + i, null, newBuffer(log(100))));
+    }
+    long size = 0;
+    File[] files = dir.toFile().listFiles();
+    assertNotNull(files);
+    for (File file : files) {
+      size += file.length();
+    }
+    // build1 is the least recently used, build0 was read after build2
+    assertTrue(cache.file("build1", null).setLastModified(now - 30000));
+    assertTrue(cache.file("build2", null).setLastModified(now - 20000));
+    assertTrue(cache.file("build0", null).setLastModified(now - 10000));
+
+    new LogCache(dir, size - 1).evict();
+    assertFalse(cache.file("build1", null).exists());
+    assertTrue(cache.file("build2", null).exists());
+    assertTrue(cache.file("build0", null).exists());
+  }
+
+  @Test
+  public void testFillOnce() throws Exception {
+    LogCache cache = new LogCache(dir, 1024 * 1024);
+    String text = log(100);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ByteBuffer log = new ByteBuffer() {
+      @Override
+      public void writeTo(OutputStream os) throws IOException {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        os.write(text.getBytes(StandardCharsets.UTF_8));
+      }
+    };
+    assertTrue(cache.fill("build", null, log));
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    assertFalse(cache.fill("build", null, newBuffer(text)));
+    assertNull(cache.get("build", null));
+    release.countDown();
+
+    long timeout = System.currentTimeMillis() + 10000;
+    ByteBuffer cached;
+    while ((cached = cache.get("build", null)) == null && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertNotNull(cached);
+    assertEquals(text, read(cached));
+    assertFalse(cache.fill("build", null, newBuffer(text)));
+  }
+
+  private static String log(int lines) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      text.append("Line ").append(i).append('\n');
+    }
+    return text.toString();
+  }
+
+  private static ByteBuffer newBuffer(String text) throws IOException {
+    ByteBuffer buffer = new ByteBuffer();
+    buffer.write(text.getBytes(StandardCharsets.UTF_8));
+    return buffer;
+  }
+
+  private static String read(ByteBuffer buffer) throws IOException {
+    try (InputStream in = buffer.newInputStream()) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.InflaterInputStream;
+import io.jenkins.plugins.elasticstacklogs.config.LumberjackInputConf;
+import io.jenkins.plugins.elasticstacklogs.input.LumberjackInput;
+import io.jenkins.plugins.elasticstacklogs.input.OverflowPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the Lumberjack input against an in-process server that speaks the Lumberjack v2 protocol.
+ */
+public class LumberjackInputTest {
+
+  private LumberjackServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new LumberjackServer();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Test
+  public void testWindows() throws IOException {
+    LumberjackInput input = new LumberjackInput("localhost", server.getPort(), 4, 3);
+    input.write(events(0, 10));
+    input.close();
+
+    assertEquals(events(0, 10), server.events);
+    assertEquals(3, server.windows.get());
+  }
+
+  @Test
+  public void testAsyncBufferByDefault() {
+    LumberjackInputConf conf = new LumberjackInputConf("localhost", server.getPort());
+    assertEquals(LumberjackInput.DEFAULT_ASYNC_BUFFER_SIZE, conf.getAsyncBufferSize());
+    // the builds do not wait while Logstash is down
+    assertEquals(OverflowPolicy.SPILL, conf.getOverflowPolicy());
+    conf.setAsyncBufferSize(100);
+    assertEquals(100, conf.getAsyncBufferSize());
+    assertEquals(OverflowPolicy.BLOCK, conf.getOverflowPolicy());
+  }
+
+  @Test
+  public void testWithoutCompression() throws IOException {
+    LumberjackInput input = new LumberjackInput("localhost", server.getPort(), 4, 0);
+    input.write(ByteBuffer.wrap("{\"message\":\"a\"}\n{\"message\":\"b\"}\n".getBytes(StandardCharsets.UTF_8)));
+    input.close();
+
+    assertEquals(2, server.events.size());
+    assertEquals("{\"message\":\"a\"}\n", server.events.get(0));
+  }
+
+  @Test
+  public void testResendNotAcknowledged() throws IOException {
+    server.partialAcks.set(1);
+    LumberjackInput input = new LumberjackInput("localhost", server.getPort(), 4, 3);
+    input.write(events(0, 4));
+    input.close();
+
+    assertEquals(events(0, 4), server.events);
+    assertTrue(server.connections.get() >= 2);
+  }
+
+  private static List<String> events(int from, int to) {
+    List<String> events = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      events.add("{\"message\":\"line " + i + "\"}\n");
+    }
+    return events;
+  }
+
+  /**
+   * Server that acknowledges the windows, the first {@link #partialAcks} windows are acknowledged up to the middle
+   * and then the connection is closed.
+   */
+  private static class LumberjackServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final AtomicInteger windows = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger partialAcks = new AtomicInteger();
+
+    LumberjackServer() throws IOException {
+      serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      Thread thread = new Thread(this::accept, "lumberjack-server");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+      while (!serverSocket.isClosed()) {
+        try (Socket socket = serverSocket.accept()) {
+          connections.incrementAndGet();
+          serve(socket);
+        } catch (IOException e) {
+          // connection closed
+        }
+      }
+    }
+
+    private void serve(Socket socket) throws IOException {
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      while (true) {
+        assertEquals('2', in.readByte());
+        assertEquals('W', in.readByte());
+        int windowSize = in.readInt();
+        List<String> window = new ArrayList<>();
+        while (window.size() < windowSize) {
+          readFrame(in, window);
+        }
+        windows.incrementAndGet();
+        if (partialAcks.getAndDecrement() > 0) {
+          int half = windowSize / 2;
+          events.addAll(window.subList(0, half));
+          ack(out, half);
+          return;
+        }
+        events.addAll(window);
+        ack(out, windowSize);
+      }
+    }
+
+    private void readFrame(DataInputStream in, List<String> window) throws IOException {
+      assertEquals('2', in.readByte());
+      byte type = in.readByte();
+      if (type == 'C') {
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+        InputStream inflated = new InflaterInputStream(new ByteArrayInputStream(compressed));
+        DataInputStream frames = new DataInputStream(inflated);
+        while (frames.available() > 0 || inflated.available() > 0) {
+          try {
+            readFrame(frames, window);
+          } catch (IOException e) {
+            break;
+          }
+        }
+      } else {
+        assertEquals('J', type);
+        int sequence = in.readInt();
+        assertEquals(window.size() + 1, sequence);
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        window.add(new String(payload, StandardCharsets.UTF_8) + "\n");
+      }
+    }
+
+    private void ack(DataOutputStream out, int sequence) throws IOException {
+      out.writeByte('2');
+      out.writeByte('A');
+      out.writeInt(sequence);
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+  }
+}
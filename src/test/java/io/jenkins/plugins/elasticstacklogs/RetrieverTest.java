@@ -5,15 +5,27 @@
 package io.jenkins.plugins.elasticstacklogs;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
 import io.jenkins.plugins.elasticstacklogs.log.BuildInfo;
 import io.jenkins.plugins.elasticstacklogs.log.Retriever;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetMappingsRequest;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.xcontent.XContentType;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -73,4 +85,131 @@ public class RetrieverTest {
     assertEquals(counter, 50);
   }
 
+  @Test
+  public void testRetrieveSearchAfter() throws IOException {
+    Retriever retriever = new Retriever(esContainer.getUrl(), ElasticsearchContainer.USER_NAME,
+                                        ElasticsearchContainer.PASSWORD, ElasticsearchContainer.INDEX
+    );
+    String buildId = BuildInfo.getKey(ElasticsearchContainer.JOB_URL_VALUE, "2");
+    String pointInTimeId = retriever.openPointInTime();
+    int counter = 0;
+    Object[] searchAfter = null;
+    SearchHit[] searchHits;
+    do {
+      SearchResponse searchResponse = retriever.searchAfter(pointInTimeId, buildId, null, searchAfter, 30);
+      pointInTimeId = searchResponse.pointInTimeId();
+      searchHits = searchResponse.getHits().getHits();
+      for (SearchHit searchHit : searchHits) {
+        assertEquals("Line " + counter, searchHit.getSourceAsMap().get(Retriever.MESSAGE));
+        counter++;
+      }
+      if (searchHits.length > 0) {
+        searchAfter = searchHits[searchHits.length - 1].getSortValues();
+      }
+    } while (searchHits.length > 0);
+    assertTrue(retriever.closePointInTime(pointInTimeId).isSucceeded());
+    assertEquals(100, counter);
+  }
+
+  @Test
+  public void testRetrievePointInTime() throws IOException {
+    Retriever retriever = new Retriever(esContainer.getUrl(), ElasticsearchContainer.USER_NAME,
+                                        ElasticsearchContainer.PASSWORD, ElasticsearchContainer.INDEX
+    );
+    String buildId = BuildInfo.getKey(ElasticsearchContainer.JOB_URL_VALUE, "2");
+    String pointInTimeId = retriever.openPointInTime();
+    int counter = 0;
+    Object[] searchAfter = null;
+    SearchHit[] searchHits;
+    do {
+      SearchResponse searchResponse = retriever.searchAfter(pointInTimeId, buildId, "1", searchAfter, 20);
+      pointInTimeId = searchResponse.pointInTimeId();
+      searchHits = searchResponse.getHits().getHits();
+      for (SearchHit searchHit : searchHits) {
+        assertEquals("Line " + (counter * 2), searchHit.getSourceAsMap().get(Retriever.MESSAGE));
+        counter++;
+      }
+      if (searchHits.length > 0) {
+        searchAfter = searchHits[searchHits.length - 1].getSortValues();
+      }
+    } while (searchHits.length > 0);
+    assertTrue(retriever.closePointInTime(pointInTimeId).isSucceeded());
+    assertEquals(50, counter);
+  }
+
+  @Test
+  public void testRetrieveFirstPages() throws IOException {
+    Retriever retriever = new Retriever(esContainer.getUrl(), ElasticsearchContainer.USER_NAME,
+                                        ElasticsearchContainer.PASSWORD, ElasticsearchContainer.INDEX
+    );
+    String buildId = BuildInfo.getKey(ElasticsearchContainer.JOB_URL_VALUE, "2");
+    String pointInTimeId = retriever.openPointInTime();
+    MultiSearchResponse.Item[] items = retriever.firstPages(pointInTimeId, buildId, Arrays.asList("1", "2"), 20)
+                                                .getResponses();
+    assertEquals(2, items.length);
+    SearchHit[] searchHits = items[0].getResponse().getHits().getHits();
+    assertEquals(20, searchHits.length);
+    for (int i = 0; i < searchHits.length; i++) {
+      assertEquals("Line " + (i * 2), searchHits[i].getSourceAsMap().get(Retriever.MESSAGE));
+    }
+    assertEquals(0, items[1].getResponse().getHits().getHits().length);
+    assertTrue(retriever.closePointInTime(pointInTimeId).isSucceeded());
+  }
+
+  @Test
+  public void testPutTemplates() throws IOException {
+    Retriever retriever = new Retriever(esContainer.getUrl(), ElasticsearchContainer.USER_NAME,
+                                        ElasticsearchContainer.PASSWORD, "logs-jenkins-*"
+    );
+    retriever.putTemplates("logs-jenkins-*, logs-jenkins.other-*");
+    String buildId = BuildInfo.getKey(ElasticsearchContainer.JOB_URL_VALUE, "2");
+    try (RestHighLevelClient client = new RestHighLevelClient(esContainer.getBuilder())) {
+      IndexRequest request = new IndexRequest("logs-jenkins-test").opType(DocWriteRequest.OpType.CREATE)
+                                                                   .setRefreshPolicy(
+                                                                     WriteRequest.RefreshPolicy.IMMEDIATE)
+                                                                   .source(XContentType.JSON, Retriever.TIMESTAMP,
+                                                                           Retriever.now(), Retriever.JOB_ID, buildId,
+                                                                           Retriever.JOB_NODE, "1",
+                                                                           Retriever.MESSAGE, "Line 0"
+                                                                          );
+      client.index(request, RequestOptions.DEFAULT);
+      Map<String, Object> mapping = client.indices()
+                                          .getMapping(new GetMappingsRequest().indices("logs-jenkins-test"),
+                                                      RequestOptions.DEFAULT
+                                                     )
+                                          .mappings().values().iterator().next().sourceAsMap();
+      assertTrue(mapping.toString().contains("id={type=keyword}"));
+    }
+    SearchHit[] searchHits = retriever.search(buildId, "1").getHits().getHits();
+    assertEquals(1, searchHits.length);
+    assertEquals("Line 0", searchHits[0].getSourceAsMap().get(Retriever.MESSAGE));
+    assertEquals(0, retriever.count(buildId.substring(1), null));
+  }
+
+  @Test
+  public void testTemplatePatterns() {
+    assertNull(Retriever.templatePatternError("logs-jenkins-*"));
+    assertNull(Retriever.templatePatternError("logs-jenkins-*, jenkins-*"));
+    assertNotNull(Retriever.templatePatternError("logs-*"));
+    assertNotNull(Retriever.templatePatternError("logs-jenkins-*, logs-*-*"));
+    assertNotNull(Retriever.templatePatternError("*jenkins*"));
+  }
+
+  @Test
+  public void testRetrieveTimeRange() throws IOException {
+    String buildId = BuildInfo.getKey(ElasticsearchContainer.JOB_URL_VALUE, "2");
+    long now = System.currentTimeMillis();
+    long hour = 60 * 60 * 1000L;
+    assertEquals(100, newRetriever(now - hour, now + hour).count(buildId, null));
+    assertEquals(100, newRetriever(now - hour, 0).count(buildId, null));
+    assertEquals(50, newRetriever(0, now + hour).count(buildId, "1"));
+    assertEquals(0, newRetriever(now - 2 * hour, now - hour).count(buildId, null));
+    assertEquals(0, newRetriever(now + hour, 0).count(buildId, null));
+  }
+
+  private Retriever newRetriever(long from, long to) {
+    return new Retriever(esContainer.getUrl(), ElasticsearchContainer.USER_NAME, ElasticsearchContainer.PASSWORD,
+                         ElasticsearchContainer.INDEX, from, to
+    );
+  }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.elasticstacklogs.input.Input;
+import io.jenkins.plugins.elasticstacklogs.input.SpoolingInput;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the on-disk spool used while the input is down.
+ */
+public class SpoolingInputTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("spool");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(directory.toFile());
+  }
+
+  @Test
+  public void testReplayInOrder() throws Exception {
+    FlakyInput delegate = new FlakyInput();
+    SpoolingInput input = new SpoolingInput(delegate, directory, 1024 * 1024, 10000);
+    input.write("0");
+    delegate.down = true;
+    for (int i = 1; i < 100; i++) {
+      assertTrue(input.write(String.valueOf(i)));
+    }
+    assertTrue(input.isSpooling());
+    assertEquals(1, delegate.events.size());
+
+    delegate.down = false;
+    input.write("100");
+    waitForReplay(input);
+    input.close();
+
+    assertEquals(101, delegate.events.size());
+    for (int i = 0; i <= 100; i++) {
+      assertEquals(String.valueOf(i), delegate.events.get(i));
+    }
+    assertEquals(100, input.getSpooled());
+    assertEquals(100, input.getReplayed());
+  }
+
+  @Test
+  public void testRecoverAfterRestart() throws Exception {
+    FlakyInput delegate = new FlakyInput();
+    delegate.down = true;
+    SpoolingInput input = new SpoolingInput(delegate, directory, 1024 * 1024, 10000);
+    for (int i = 0; i < 10; i++) {
+      input.write(String.valueOf(i));
+    }
+    input.close();
+
+    delegate.down = false;
+    input = new SpoolingInput(delegate, directory, 1024 * 1024, 10000);
+    waitForReplay(input);
+    input.close();
+    assertEquals(10, delegate.events.size());
+    assertEquals("0", delegate.events.get(0));
+    assertEquals("9", delegate.events.get(9));
+  }
+
+  @Test
+  public void testMaxSize() throws Exception {
+    FlakyInput delegate = new FlakyInput();
+    delegate.down = true;
+    SpoolingInput input = new SpoolingInput(delegate, directory, 4096, 10000);
+    for (int i = 0; i < 1000; i++) {
+      input.write(String.format("%08d", i));
+    }
+    assertTrue(input.getDropped() > 0);
+    File[] segments = directory.toFile().listFiles((dir, name) -> name.endsWith(".spool"));
+    long size = 0;
+    for (File segment : segments) {
+      size += segment.length();
+    }
+    assertTrue(size <= 4096);
+
+    delegate.down = false;
+    waitForReplay(input);
+    input.close();
+    assertEquals(1000, delegate.events.size() + input.getDropped());
+    assertEquals("00000999", delegate.events.get(delegate.events.size() - 1));
+  }
+
+  @Test
+  public void testReplayFasterThanRate() throws Exception {
+    FlakyInput delegate = new FlakyInput();
+    delegate.down = true;
+    // 10 events per second would take 100 seconds to replay the spool
+    SpoolingInput input = new SpoolingInput(delegate, directory, 1024 * 1024, 10);
+    for (int i = 0; i < 1000; i++) {
+      input.write(String.valueOf(i));
+    }
+    delegate.down = false;
+    waitForReplay(input);
+    input.close();
+    assertEquals(1000, delegate.events.size());
+    assertEquals("999", delegate.events.get(999));
+  }
+
+  private void waitForReplay(SpoolingInput input) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (input.isSpooling() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertFalse(input.isSpooling());
+  }
+
+  /**
+   * Input that fails while it is down.
+   */
+  private static class FlakyInput extends Input {
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean down;
+
+    @Override
+    public boolean write(@NonNull String value) throws IOException {
+      if (down) {
+        throw new IOException("connection refused");
+      }
+      events.add(value);
+      return true;
+    }
+  }
+}
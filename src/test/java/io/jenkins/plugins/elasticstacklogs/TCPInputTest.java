@@ -0,0 +1,205 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import io.jenkins.plugins.elasticstacklogs.input.TCPInput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the TCP input against an in-process TCP sink.
+ */
+public class TCPInputTest {
+  private static final Logger LOGGER = Logger.getLogger(TCPInputTest.class.getName());
+  private static final int LINES = 20000;
+  private static final String LINE = "{\"message\":\"Hello world\",\"job.id\":\"aHR0cDovL2plbmtpbnMvam9iL3Rlc3QjMQ==\"}\n";
+
+  private TCPSink sink;
+
+  @Before
+  public void setUp() throws IOException {
+    sink = new TCPSink();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    sink.close();
+  }
+
+  @Test
+  public void testThroughput() throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < LINES; i++) {
+      try (Socket socket = new Socket(sink.getHost(), sink.getPort())) {
+        socket.getOutputStream().write(LINE.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    sink.await(LINES);
+    long socketPerLine = System.nanoTime() - start;
+    int connectionsPerLine = sink.getConnections();
+
+    TCPInput input = new TCPInput(sink.getHost(), sink.getPort(), 2);
+    start = System.nanoTime();
+    for (int i = 0; i < LINES; i++) {
+      input.write(LINE);
+    }
+    sink.await(2 * LINES);
+    long pooled = System.nanoTime() - start;
+
+    List<String> batch = new ArrayList<>();
+    start = System.nanoTime();
+    for (int i = 0; i < LINES; i++) {
+      batch.add(LINE);
+      if (batch.size() == 100) {
+        input.write(batch);
+        batch.clear();
+      }
+    }
+    sink.await(3 * LINES);
+    long batched = System.nanoTime() - start;
+    input.close();
+
+    LOGGER.info("connection per line: " + linesPerSecond(socketPerLine) + " lines/s");
+    LOGGER.info("pooled connections: " + linesPerSecond(pooled) + " lines/s");
+    LOGGER.info("pooled connections, batches of 100 lines: " + linesPerSecond(batched) + " lines/s");
+    assertEquals(3 * LINES, sink.getLines());
+    assertEquals(LINES, connectionsPerLine);
+    assertTrue(sink.getConnections() - connectionsPerLine <= 2);
+  }
+
+  @Test
+  public void testReconnect() throws Exception {
+    TCPInput input = new TCPInput(sink.getHost(), sink.getPort(), 1);
+    input.write(LINE);
+    sink.await(1);
+    sink.closeConnections();
+    Thread.sleep(2000);
+    input.write(LINE);
+    sink.await(2);
+    input.close();
+    assertEquals(2, sink.getLines());
+    assertEquals(2, sink.getConnections());
+  }
+
+  @Test
+  public void testSharedPool() throws Exception {
+    TCPInput input = new TCPInput(sink.getHost(), sink.getPort(), 1);
+    TCPInput other = new TCPInput(sink.getHost(), sink.getPort(), 1);
+    input.write(LINE);
+    sink.await(1);
+    input.close();
+    other.write(LINE);
+    sink.await(2);
+    assertEquals(2, sink.getLines());
+    assertEquals(1, sink.getConnections());
+    other.close();
+  }
+
+  private static long linesPerSecond(long nanos) {
+    return LINES * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+  }
+
+  /**
+   * TCP server that counts the lines received.
+   */
+  private static class TCPSink implements AutoCloseable {
+    private final ServerSocket server;
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+    TCPSink() throws IOException {
+      server = new ServerSocket(0, 1000, InetAddress.getLoopbackAddress());
+      Thread acceptor = new Thread(this::accept, "tcp-sink");
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    String getHost() {
+      return server.getInetAddress().getHostAddress();
+    }
+
+    int getPort() {
+      return server.getLocalPort();
+    }
+
+    long getLines() {
+      return lines.get();
+    }
+
+    int getConnections() {
+      return connections.get();
+    }
+
+    void await(long expected) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+      while (lines.get() < expected && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+    }
+
+    void closeConnections() throws IOException {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+      sockets.clear();
+    }
+
+    private void accept() {
+      while (!server.isClosed()) {
+        try {
+          Socket socket = server.accept();
+          connections.incrementAndGet();
+          sockets.add(socket);
+          Thread reader = new Thread(() -> read(socket), "tcp-sink-reader");
+          reader.setDaemon(true);
+          reader.start();
+        } catch (IOException e) {
+          return;
+        }
+      }
+    }
+
+    private void read(Socket socket) {
+      byte[] buffer = new byte[64 * 1024];
+      try (InputStream in = socket.getInputStream()) {
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+          for (int i = 0; i < read; i++) {
+            if (buffer[i] == '\n') {
+              lines.incrementAndGet();
+            }
+          }
+        }
+      } catch (IOException e) {
+        // connection closed
+      } finally {
+        sockets.remove(socket);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      server.close();
+      closeConnections();
+    }
+  }
+}
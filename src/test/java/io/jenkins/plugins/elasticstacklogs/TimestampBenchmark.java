@@ -0,0 +1,46 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import io.jenkins.plugins.elasticstacklogs.log.TimestampFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the cached {@link TimestampFormatter} with formatting a new {@link ZonedDateTime} on every event
+ * as the output stream did before. Run it with {@link BenchmarkRunner}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimestampBenchmark {
+  private final TimestampFormatter millis = new TimestampFormatter(Clock.systemUTC(), false);
+  private final TimestampFormatter micros = new TimestampFormatter(Clock.systemUTC(), true);
+
+  @Benchmark
+  public String zonedDateTime() {
+    ZonedDateTime date = ZonedDateTime.now(TimeZone.getTimeZone("UTC").toZoneId());
+    return DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").format(date);
+  }
+
+  @Benchmark
+  public byte[] cachedMilliseconds() {
+    return millis.now();
+  }
+
+  @Benchmark
+  public byte[] cachedMicroseconds() {
+    return micros.now();
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import io.jenkins.plugins.elasticstacklogs.log.TimestampFormatter;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class TimestampFormatterTest {
+
+  @Test
+  public void testMilliseconds() {
+    TimestampFormatter formatter = new TimestampFormatter(Clock.systemUTC(), false);
+    assertEquals("2021-12-18T19:42:46.604Z", format(formatter, Instant.parse("2021-12-18T19:42:46.604893745Z")));
+    assertEquals("2021-12-18T19:42:46.005Z", format(formatter, Instant.parse("2021-12-18T19:42:46.005Z")));
+    assertEquals("2021-12-18T19:42:47.000Z", format(formatter, Instant.parse("2021-12-18T19:42:47Z")));
+    assertEquals("1970-01-01T00:00:00.000Z", format(formatter, Instant.EPOCH));
+  }
+
+  @Test
+  public void testMicroseconds() {
+    TimestampFormatter formatter = new TimestampFormatter(Clock.systemUTC(), true);
+    assertEquals("2021-12-18T19:42:46.604893Z", format(formatter, Instant.parse("2021-12-18T19:42:46.604893745Z")));
+    assertEquals("2021-12-18T19:42:46.000010Z", format(formatter, Instant.parse("2021-12-18T19:42:46.000010Z")));
+  }
+
+  @Test
+  public void testSameAsDateTimeFormatter() {
+    DateTimeFormatter expected = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+    TimestampFormatter formatter = new TimestampFormatter(Clock.systemUTC(), false);
+    Random random = new Random(42);
+    long millis = System.currentTimeMillis();
+    for (int i = 0; i < 10000; i++) {
+      // mostly in the same second, sometimes jumping back and forth
+      millis += random.nextInt(10) == 0 ? random.nextInt(20000) - 10000 : random.nextInt(50);
+      Instant instant = Instant.ofEpochMilli(millis);
+      assertEquals(expected.format(instant), format(formatter, instant));
+      assertEquals(expected.format(instant), TimestampFormatter.toString(millis));
+    }
+  }
+
+  @Test
+  public void testNow() {
+    Instant instant = Instant.parse("2022-01-10T08:00:00.123Z");
+    TimestampFormatter formatter = new TimestampFormatter(Clock.fixed(instant, ZoneOffset.UTC), false);
+    byte[] now = formatter.now();
+    assertEquals("2022-01-10T08:00:00.123Z", new String(now, 0, formatter.length(), StandardCharsets.US_ASCII));
+  }
+
+  private static String format(TimestampFormatter formatter, Instant instant) {
+    byte[] buffer = formatter.format(instant);
+    return new String(buffer, 0, formatter.length(), StandardCharsets.US_ASCII);
+  }
+}
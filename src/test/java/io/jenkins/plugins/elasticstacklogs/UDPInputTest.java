@@ -0,0 +1,71 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.jenkins.plugins.elasticstacklogs;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import io.jenkins.plugins.elasticstacklogs.input.UDPInput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test the UDP input against an in-process UDP socket.
+ */
+public class UDPInputTest {
+
+  private DatagramSocket udpSocket;
+
+  @Before
+  public void setUp() throws IOException {
+    udpSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    udpSocket.setSoTimeout(10000);
+  }
+
+  @After
+  public void tearDown() {
+    udpSocket.close();
+  }
+
+  @Test
+  public void testOneEventPerDatagram() throws IOException {
+    UDPInput input = new UDPInput("localhost", udpSocket.getLocalPort());
+    input.write(Arrays.asList("foo\n", "bar\n"));
+    assertEquals("foo\n", receive());
+    assertEquals("bar\n", receive());
+  }
+
+  @Test
+  public void testPacking() throws IOException {
+    UDPInput input = new UDPInput("localhost", udpSocket.getLocalPort(), 10);
+    input.write(Arrays.asList("foo\n", "bar\n", "baz\n", "0123456789abc\n", "qux\n"));
+    assertEquals("foo\nbar\n", receive());
+    assertEquals("baz\n", receive());
+    assertEquals("0123456789abc\n", receive());
+    assertEquals("qux\n", receive());
+  }
+
+  @Test
+  public void testPackingEncodedEvents() throws IOException {
+    UDPInput input = new UDPInput("localhost", udpSocket.getLocalPort(), 10);
+    input.write(ByteBuffer.wrap("foo\nbar\nbaz\n0123456789abc\nqux".getBytes(StandardCharsets.UTF_8)));
+    assertEquals("foo\nbar\n", receive());
+    assertEquals("baz\n", receive());
+    assertEquals("0123456789abc\n", receive());
+    assertEquals("qux", receive());
+  }
+
+  private String receive() throws IOException {
+    DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+    udpSocket.receive(packet);
+    return new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8);
+  }
+}